@@ -1,13 +1,73 @@
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
+import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
 import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
 import com.sun.net.httpserver.*;
 
 // --- User Class ---
@@ -19,7 +79,7 @@ class User {
     private String location;
     private long mobile;
     private String role;
-    private LocalDateTime lastDonatedDateTime;
+    private volatile LocalDateTime lastDonatedDateTime;
     private String gender;
 
     public User(String id, String name, String email, String bloodType, String location, long mobile, String role, String gender) {
@@ -55,32 +115,63 @@ class BloodRequest {
     private String userId;
     private String bloodType;
     private String hospitalArea;
-    private int unitsNeeded;
     private String seriousness;
-    private String status;
     private LocalDateTime createdAt;
+    private volatile State state;
+
+    // The parts a donation changes, replaced as one immutable value: a reader takes a single volatile
+    // read and always sees units and status that belong together, without locking against writers
+    static final class State {
+        final int unitsNeeded;
+        final String status;
+
+        State(int unitsNeeded, String status) {
+            this.unitsNeeded = unitsNeeded;
+            this.status = status;
+        }
+
+        public boolean isOpen() { return "OPEN".equals(status); }
+    }
 
     public BloodRequest(String id, String userId, String bloodType, String hospitalArea, int unitsNeeded, String seriousness, String status, LocalDateTime createdAt) {
         this.id = id;
         this.userId = userId;
         this.bloodType = bloodType;
         this.hospitalArea = hospitalArea;
-        this.unitsNeeded = unitsNeeded;
         this.seriousness = seriousness;
-        this.status = status;
         this.createdAt = createdAt;
+        this.state = new State(unitsNeeded, status);
     }
 
     public String getId() { return id; }
     public String getUserId() { return userId; }
     public String getBloodType() { return bloodType; }
     public String getHospitalArea() { return hospitalArea; }
-    public int getUnitsNeeded() { return unitsNeeded; }
+    // Each of these is a separate read of the state; callers that need both take getState() once
+    public int getUnitsNeeded() { return state.unitsNeeded; }
     public String getSeriousness() { return seriousness; }
-    public String getStatus() { return status; }
+    public String getStatus() { return state.status; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public State getState() { return state; }
+
+    // The request as expire() would leave it, without touching this one
+    public BloodRequest expiredCopy() {
+        return new BloodRequest(id, userId, bloodType, hospitalArea, state.unitsNeeded, seriousness, "EXPIRED", createdAt);
+    }
+
+    // Callers hold the snapshot write lock, so no donation can race with the expiry
+    public State expire() {
+        state = new State(state.unitsNeeded, "EXPIRED");
+        return state;
+    }
 
-    public void setUnitsNeeded(int unitsNeeded) { this.unitsNeeded = unitsNeeded; }
-    public void setStatus(String status) { this.status = status; }
+    // Callers hold the request's donation lock, so there is a single writer per request
+    public State recordUnitDonated() {
+        State current = state;
+        int remaining = current.unitsNeeded - 1;
+        state = new State(remaining, remaining <= 0 ? "FULFILLED" : current.status);
+        return state;
+    }
 }
 
 // --- Donation Class ---
@@ -97,403 +188,4729 @@ class Donation {
         this.donationDateTime = donationDateTime;
     }
 
+    public String getId() { return id; }
     public String getDonorId() { return donorId; }
     public String getRequestId() { return requestId; }
     public LocalDateTime getDonationDateTime() { return donationDateTime; }
 }
 
-// --- Main Web Application Class ---
-public class BloodDonationWebApp {
-    private List<User> users = new ArrayList<>();
-    private List<BloodRequest> requests = new ArrayList<>();
-    private List<Donation> donations = new ArrayList<>();
-    private int userNumericIdCounter = 1;
-    private int requestNumericIdCounter = 1;
-    private int donationNumericIdCounter = 1;
-    private Random rand = new Random();
-    private HttpServer server;
+// --- BloodType Enum ---
+enum BloodType {
+    O_NEG("O-"), O_POS("O+"), A_NEG("A-"), A_POS("A+"), B_NEG("B-"), B_POS("B+"), AB_NEG("AB-"), AB_POS("AB+");
 
-    // Validation Methods
-    private boolean isValidEmail(String email) {
-        String regex = "^[a-z][a-z0-9]*@gmail\\.com$";
-        return email != null && email.matches(regex);
-    }
+    // Row = donor, column = recipient, both in declaration order (O-, O+, A-, A+, B-, B+, AB-, AB+).
+    // Mirrors the compatibility matrix in the README.
+    private static final String[] COMPATIBILITY = {
+        "11111111", // O-
+        "01010101", // O+
+        "00110011", // A-
+        "00010001", // A+
+        "00001111", // B-
+        "00000101", // B+
+        "00000011", // AB-
+        "00000001", // AB+
+    };
 
-    private boolean isValidBloodType(String bloodType) {
-        String[] validTypes = {"A+", "A-", "B+", "B-", "AB+", "AB-", "O+", "O-"};
-        if (bloodType == null) return false;
-        for (String type : validTypes) {
-            if (type.equalsIgnoreCase(bloodType)) return true;
+    private static final Map<String, BloodType> BY_LABEL = new HashMap<>();
+    private static final BloodType[][] DONORS_FOR = new BloodType[values().length][];
+
+    static {
+        for (BloodType type : values()) {
+            BY_LABEL.put(type.label, type);
+            String row = COMPATIBILITY[type.ordinal()];
+            for (int i = 0; i < row.length(); i++) {
+                if (row.charAt(i) == '1') type.recipientMask |= 1 << i;
+            }
+        }
+        for (BloodType recipient : values()) {
+            // Same type first, then the other compatible types with the universal O- last
+            List<BloodType> donors = new ArrayList<>();
+            donors.add(recipient);
+            for (int i = values().length - 1; i >= 0; i--) {
+                BloodType donor = values()[i];
+                if (donor != recipient && donor.canDonateTo(recipient)) donors.add(donor);
+            }
+            DONORS_FOR[recipient.ordinal()] = donors.toArray(new BloodType[0]);
         }
-        return false;
     }
 
-    private boolean isValidMobile(long mobile) {
-        String mobileStr = String.valueOf(mobile);
-        return mobileStr.length() == 10 && (mobileStr.charAt(0) >= '6' && mobileStr.charAt(0) <= '9');
+    private final String label;
+    private int recipientMask;
+
+    BloodType(String label) {
+        this.label = label;
     }
 
-    private boolean isValidSeriousness(String seriousness) {
-        String[] validLevels = {"LOW", "MODERATE", "HIGH"};
-        if (seriousness == null) return false;
-        for (String level : validLevels) {
-            if (level.equalsIgnoreCase(seriousness)) return true;
+    public String getLabel() { return label; }
+
+    public boolean canDonateTo(BloodType recipient) {
+        return (recipientMask & (1 << recipient.ordinal())) != 0;
+    }
+
+    // Donor blood types that can give to the given recipient, in preferred matching order
+    public static BloodType[] donorsFor(BloodType recipient) {
+        return DONORS_FOR[recipient.ordinal()].clone();
+    }
+
+    // Returns null for anything that is not one of the eight ABO/Rh labels
+    public static BloodType parse(String label) {
+        return label == null ? null : BY_LABEL.get(label.trim().toUpperCase(Locale.ROOT));
+    }
+}
+
+// --- Seriousness Enum ---
+// Declared from most to least urgent; the ordinal doubles as the priority rank.
+enum Seriousness {
+    HIGH, MODERATE, LOW;
+
+    // Returns null for anything other than the three levels, in any case
+    public static Seriousness parse(String value) {
+        if (value == null) return null;
+        switch (value.trim().toUpperCase(Locale.ROOT)) {
+            case "HIGH": return HIGH;
+            case "MODERATE": return MODERATE;
+            case "LOW": return LOW;
+            default: return null;
         }
-        return false;
     }
+}
 
-    private boolean isValidGender(String gender) {
-        return gender != null && (gender.equalsIgnoreCase("MALE") || gender.equalsIgnoreCase("FEMALE") || gender.equalsIgnoreCase("OTHER"));
+// --- Gender Enum ---
+enum Gender {
+    MALE, FEMALE, OTHER;
+
+    // Returns null for anything other than the three values, in any case
+    public static Gender parse(String value) {
+        if (value == null) return null;
+        switch (value.trim().toUpperCase(Locale.ROOT)) {
+            case "MALE": return MALE;
+            case "FEMALE": return FEMALE;
+            case "OTHER": return OTHER;
+            default: return null;
+        }
+    }
+}
+
+// --- Validator Class ---
+// Collects per-field errors for one request. Patterns are compiled once, and the enum-valued
+// fields (blood type, seriousness, gender) are validated by the enum lookups that parse them.
+class Validator {
+    private static final Pattern EMAIL_PATTERN = Pattern.compile("[a-z][a-z0-9]*@gmail\\.com");
+    private static final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z\\s]+");
+
+    // Allocated on the first error so valid requests stay allocation-free
+    private Map<String, String> errors;
+
+    public static boolean isValidEmail(String email) {
+        return email != null && EMAIL_PATTERN.matcher(email).matches();
     }
 
-    private boolean isValidName(String name) {
-        return name != null && name.matches("^[a-zA-Z\\s]+$") && !name.trim().isEmpty();
+    public static boolean isValidName(String name) {
+        return name != null && !name.trim().isEmpty() && NAME_PATTERN.matcher(name).matches();
     }
 
-    private boolean isEmailTaken(String email) {
-        return users.stream().anyMatch(u -> u.getEmail().equalsIgnoreCase(email));
+    // Ten digits starting with 6-9
+    public static boolean isValidMobile(long mobile) {
+        return mobile >= 6_000_000_000L && mobile <= 9_999_999_999L;
     }
 
-    private boolean isMobileTaken(long mobile) {
-        return users.stream().anyMatch(u -> u.getMobile() == mobile);
+    public Validator name(String name) {
+        return check("name", isValidName(name), "Use letters and spaces only");
     }
 
-    private boolean isEligibleForDonation(String userId) {
-        User donor = users.stream().filter(u -> u.getId().equals(userId) && u.getRole().equals("DONOR")).findFirst().orElse(null);
-        if (donor == null) return false;
-        if (donor.getLastDonatedDateTime() == null) return true;
+    public Validator email(String email) {
+        return check("email", isValidEmail(email), "Use a lowercase @gmail.com address");
+    }
 
-        int donationCooldownDays = "MALE".equalsIgnoreCase(donor.getGender()) ? 120 : 180;
-        long daysSinceLastDonation = ChronoUnit.DAYS.between(donor.getLastDonatedDateTime(), LocalDateTime.now());
-        return daysSinceLastDonation >= donationCooldownDays;
+    public Validator mobile(long mobile) {
+        return check("mobile", isValidMobile(mobile), "Use a 10-digit number starting with 6-9");
+    }
+
+    public Validator present(String field, Object parsedValue, String message) {
+        return check(field, parsedValue != null, message);
+    }
+
+    public Validator notBlank(String field, String value) {
+        return check(field, value != null && !value.trim().isEmpty(), "Required");
+    }
+
+    public Validator range(String field, int value, int min, int max) {
+        return check(field, value >= min && value <= max, "Must be between " + min + " and " + max);
     }
 
-    private boolean canDonateTo(String donorBloodType, String receiverBloodType) {
-        switch (donorBloodType.toUpperCase()) {
-            case "O-": return true;
-            case "O+": return receiverBloodType.endsWith("+") || receiverBloodType.equalsIgnoreCase("O+");
-            case "A-": return receiverBloodType.startsWith("A") || receiverBloodType.startsWith("AB");
-            case "A+": return (receiverBloodType.startsWith("A") || receiverBloodType.startsWith("AB")) && receiverBloodType.endsWith("+");
-            case "B-": return receiverBloodType.startsWith("B") || receiverBloodType.startsWith("AB");
-            case "B+": return (receiverBloodType.startsWith("B") || receiverBloodType.startsWith("AB")) && receiverBloodType.endsWith("+");
-            case "AB-": return receiverBloodType.startsWith("AB");
-            case "AB+": return receiverBloodType.equalsIgnoreCase("AB+");
-            default: return false;
+    // Keeps the first error reported for a field
+    public Validator check(String field, boolean valid, String message) {
+        if (!valid) {
+            if (errors == null) errors = new LinkedHashMap<>();
+            errors.putIfAbsent(field, message);
         }
+        return this;
     }
 
-    // Web Server Setup
-    public void startWebServer() {
-        try {
-            server = HttpServer.create(new InetSocketAddress(8080), 0);
-            
-            // Serve HTML files
-            server.createContext("/", new StaticFileHandler());
-            
-            // API endpoints
-            server.createContext("/api/register-donor", new RegisterDonorHandler());
-            server.createContext("/api/register-receiver", new RegisterReceiverHandler());
-            server.createContext("/api/post-request", new PostRequestHandler());
-            server.createContext("/api/get-requests", new GetRequestsHandler());
-            server.createContext("/api/get-donors", new GetDonorsHandler());
-            server.createContext("/api/record-donation", new RecordDonationHandler());
-            server.createContext("/api/donor-details", new DonorDetailsHandler());
-            server.createContext("/api/my-requests", new MyRequestsHandler());
-            
-            server.setExecutor(Executors.newFixedThreadPool(10));
-            server.start();
-            
-            System.out.println("🌐 Blood Donation Web App started at http://localhost:8080");
-            System.out.println("📱 Open your browser and go to http://localhost:8080 to use the app!");
-            System.out.println("Press Ctrl+C to stop the server");
-            
-        } catch (IOException e) {
-            System.err.println("❌ Failed to start web server: " + e.getMessage());
+    public boolean hasErrors() {
+        return errors != null;
+    }
+
+    public Map<String, String> errors() {
+        return errors == null ? Collections.emptyMap() : Collections.unmodifiableMap(errors);
+    }
+}
+
+// --- UserStore Interface ---
+// Lookup API shared by the object-per-user repository and the compact columnar store
+interface UserStore {
+    enum AddResult { ADDED, EMAIL_TAKEN, MOBILE_TAKEN, ID_TAKEN }
+
+    AddResult add(User user);
+    User findById(String id);
+    User findById(String id, String role);
+    boolean isEmailTaken(String email);
+    boolean isMobileTaken(long mobile);
+    // Every user, in registration order
+    Collection<User> all();
+    // Users with the given role, in registration order
+    Collection<User> withRole(String role);
+    // Donors of exactly the given blood type, in registration order
+    Collection<User> donorsWithBloodType(BloodType bloodType);
+    int size();
+}
+
+// --- UserRepository Class ---
+// Thread-safe user store indexed by id, email, mobile and role. Email and mobile
+// uniqueness are claimed atomically so concurrent registrations cannot both succeed.
+class UserRepository implements UserStore {
+
+    private final ConcurrentHashMap<String, User> byId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, User> byEmail = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, User> byMobile = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Queue<User>> byRole = new ConcurrentHashMap<>();
+    private final Map<BloodType, Queue<User>> donorsByBloodType = new EnumMap<>(BloodType.class);
+    private final Queue<User> all = new ConcurrentLinkedQueue<>();
+
+    public UserRepository() {
+        for (BloodType type : BloodType.values()) {
+            donorsByBloodType.put(type, new ConcurrentLinkedQueue<>());
         }
     }
 
-    // Static file handler to serve HTML, CSS, JS files
-    class StaticFileHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            String path = exchange.getRequestURI().getPath();
-            if (path.equals("/")) {
-                path = "/index.html";
-            }
-            
-            // Try to read file from current directory
-            File file = new File("." + path);
-            if (file.exists() && file.isFile()) {
-                String contentType = getContentType(path);
-                exchange.getResponseHeaders().set("Content-Type", contentType);
-                exchange.sendResponseHeaders(200, file.length());
-                
-                try (FileInputStream fis = new FileInputStream(file);
-                     OutputStream os = exchange.getResponseBody()) {
-                    byte[] buffer = new byte[8192];
-                    int bytesRead;
-                    while ((bytesRead = fis.read(buffer)) != -1) {
-                        os.write(buffer, 0, bytesRead);
-                    }
-                }
-            } else {
-                // File not found
-                String response = "<!DOCTYPE html><html><head><title>File Not Found</title></head><body><h1>404 - File Not Found</h1><p>The file " + path + " was not found.</p></body></html>";
-                exchange.getResponseHeaders().set("Content-Type", "text/html");
-                exchange.sendResponseHeaders(404, response.length());
-                exchange.getResponseBody().write(response.getBytes());
-                exchange.getResponseBody().close();
-            }
+    @Override
+    public AddResult add(User user) {
+        String emailKey = emailKey(user.getEmail());
+        if (byEmail.putIfAbsent(emailKey, user) != null) {
+            return AddResult.EMAIL_TAKEN;
         }
-        
-        private String getContentType(String path) {
-            if (path.endsWith(".html")) return "text/html; charset=utf-8";
-            if (path.endsWith(".css")) return "text/css";
-            if (path.endsWith(".js")) return "application/javascript";
-            if (path.endsWith(".png")) return "image/png";
-            if (path.endsWith(".jpg") || path.endsWith(".jpeg")) return "image/jpeg";
-            return "text/plain";
+        if (byMobile.putIfAbsent(user.getMobile(), user) != null) {
+            byEmail.remove(emailKey, user);
+            return AddResult.MOBILE_TAKEN;
+        }
+        if (byId.putIfAbsent(user.getId(), user) != null) {
+            byMobile.remove(user.getMobile(), user);
+            byEmail.remove(emailKey, user);
+            return AddResult.ID_TAKEN;
+        }
+        all.add(user);
+        byRole.computeIfAbsent(user.getRole(), r -> new ConcurrentLinkedQueue<>()).add(user);
+        BloodType bloodType = BloodType.parse(user.getBloodType());
+        if ("DONOR".equals(user.getRole()) && bloodType != null) {
+            donorsByBloodType.get(bloodType).add(user);
         }
+        return AddResult.ADDED;
     }
 
-    // API Handlers
-    class RegisterDonorHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            setCORSHeaders(exchange);
-            if ("OPTIONS".equals(exchange.getRequestMethod())) {
-                exchange.sendResponseHeaders(200, -1);
-                return;
-            }
-            
-            if ("POST".equals(exchange.getRequestMethod())) {
-                try {
-                    String requestBody = new String(exchange.getRequestBody().readAllBytes());
-                    String[] params = requestBody.split("&");
-                    
-                    String name = "", email = "", bloodType = "", location = "", gender = "";
-                    long mobile = 0;
-                    LocalDateTime lastDonated = null;
-                    
-                    for (String param : params) {
-                        String[] kv = param.split("=", 2);
-                        if (kv.length == 2) {
-                            String key = URLDecoder.decode(kv[0], "UTF-8");
-                            String value = URLDecoder.decode(kv[1], "UTF-8");
-                            
-                            switch (key) {
-                                case "name": name = value; break;
-                                case "email": email = value; break;
-                                case "mobile": 
-                                    try { mobile = Long.parseLong(value); } catch (NumberFormatException e) { mobile = 0; }
-                                    break;
-                                case "bloodType": bloodType = value.toUpperCase(); break;
-                                case "location": location = value; break;
-                                case "gender": gender = value.toUpperCase(); break;
-                                case "lastDonated": 
-                                    if (!value.isEmpty() && !value.equals("NEVER")) {
-                                        try {
-                                            lastDonated = LocalDateTime.parse(value + " 00:00:00", 
-                                                DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-                                        } catch (Exception e) { /* ignore */ }
-                                    }
-                                    break;
-                            }
-                        }
-                    }
-                    
-                    // Validate inputs
-                    if (!isValidName(name) || !isValidEmail(email) || !isValidMobile(mobile) || 
-                        !isValidBloodType(bloodType) || location.isEmpty() || !isValidGender(gender)) {
-                        sendResponse(exchange, 400, "{\"success\": false, \"message\": \"Invalid input data. Please check all fields.\"}");
-                        return;
-                    }
-                    
-                    if (isEmailTaken(email)) {
-                        sendResponse(exchange, 400, "{\"success\": false, \"message\": \"Email already registered.\"}");
-                        return;
-                    }
-                    
-                    if (isMobileTaken(mobile)) {
-                        sendResponse(exchange, 400, "{\"success\": false, \"message\": \"Mobile number already registered.\"}");
-                        return;
-                    }
-                    
-                    String donorId = String.valueOf(userNumericIdCounter++);
-                    User newDonor = new User(donorId, name, email, bloodType, location, mobile, "DONOR", gender);
-                    newDonor.setLastDonatedDateTime(lastDonated);
-                    users.add(newDonor);
-                    
-                    String response = "{\"success\": true, \"message\": \"Donor registered successfully!\", \"userId\": \"" + donorId + "\"}";
-                    sendResponse(exchange, 200, response);
-                    
-                } catch (Exception e) {
-                    sendResponse(exchange, 500, "{\"success\": false, \"message\": \"Registration failed: " + e.getMessage() + "\"}");
-                }
-            }
+    @Override
+    public User findById(String id) {
+        return id == null ? null : byId.get(id);
+    }
+
+    @Override
+    public User findById(String id, String role) {
+        User user = findById(id);
+        return user != null && user.getRole().equals(role) ? user : null;
+    }
+
+    @Override
+    public boolean isEmailTaken(String email) {
+        return email != null && byEmail.containsKey(emailKey(email));
+    }
+
+    @Override
+    public boolean isMobileTaken(long mobile) {
+        return byMobile.containsKey(mobile);
+    }
+
+    @Override
+    public Collection<User> all() {
+        return Collections.unmodifiableCollection(all);
+    }
+
+    @Override
+    public Collection<User> withRole(String role) {
+        Queue<User> users = byRole.get(role);
+        return users == null ? Collections.emptyList() : Collections.unmodifiableCollection(users);
+    }
+
+    @Override
+    public Collection<User> donorsWithBloodType(BloodType bloodType) {
+        return Collections.unmodifiableCollection(donorsByBloodType.get(bloodType));
+    }
+
+    @Override
+    public int size() {
+        return byId.size();
+    }
+
+    private static String emailKey(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+}
+
+// --- CompactUserStore Class ---
+// Columnar UserStore for large donor bases (saviour.user.store=compact). Instead of one object graph per
+// user (several Strings, a LocalDateTime), each user is a slot across primitive columns held in
+// fixed-size chunks:
+// - blood type, gender and role are byte codes
+// - the last donation is an epoch-day int, so cooldowns count whole days
+// - locations and roles are dictionary-encoded, shared by every user in the same area
+// - id, name and email are UTF-8 in append-only 64 KB text pages, addressed by an int
+// Lookups by id, email and mobile go through open-addressing int tables of slot numbers. The returned
+// User objects are thin views over a slot that read and write through to the columns.
+class CompactUserStore implements UserStore {
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int PAGE_BITS = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int NEVER = Integer.MIN_VALUE;
+    private static final BloodType[] BLOOD_TYPES = BloodType.values();
+    private static final Gender[] GENDERS = Gender.values();
+
+    private static final class Chunk {
+        final int[] id = new int[CHUNK_SIZE];
+        final int[] name = new int[CHUNK_SIZE];
+        final int[] email = new int[CHUNK_SIZE];
+        final int[] location = new int[CHUNK_SIZE];
+        final long[] mobile = new long[CHUNK_SIZE];
+        final byte[] bloodType = new byte[CHUNK_SIZE];
+        final byte[] gender = new byte[CHUNK_SIZE];
+        final byte[] role = new byte[CHUNK_SIZE];
+        // Written outside the store lock when a donation is recorded
+        final AtomicIntegerArray lastDonatedDay = new AtomicIntegerArray(CHUNK_SIZE);
+    }
+
+    // Append-only string <-> code table; codes never change once handed out
+    private static final class Dictionary {
+        private final HashMap<String, Integer> codes = new HashMap<>();
+        private volatile String[] values = new String[0];
+
+        // Caller holds the store's write lock
+        int code(String value) {
+            if (value == null) return -1;
+            Integer code = codes.get(value);
+            if (code != null) return code;
+            String[] grown = Arrays.copyOf(values, values.length + 1);
+            grown[values.length] = value;
+            values = grown;
+            codes.put(value, values.length - 1);
+            return values.length - 1;
+        }
+
+        String value(int code) {
+            return code < 0 ? null : values[code];
         }
     }
-    
-    class RegisterReceiverHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            setCORSHeaders(exchange);
-            if ("OPTIONS".equals(exchange.getRequestMethod())) {
-                exchange.sendResponseHeaders(200, -1);
-                return;
+
+    // Adds, lookups and table resizes are serialised by this lock; column reads of published slots need none
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile Chunk[] chunks = new Chunk[0];
+    private volatile int size;
+    private volatile byte[][] pages = new byte[0][];
+    private int pageCount;
+    private int pageOffset = PAGE_SIZE;
+    private final Dictionary locations = new Dictionary();
+    private final Dictionary roles = new Dictionary();
+    // Slot + 1 per entry, 0 when empty; kept at most half full
+    private int[] idTable = new int[1024];
+    private int[] emailTable = new int[1024];
+    private int[] mobileTable = new int[1024];
+
+    @Override
+    public AddResult add(User user) {
+        byte[] idKey = utf8(user.getId());
+        byte[] emailKey = utf8(emailKey(user.getEmail()));
+        lock.writeLock().lock();
+        try {
+            if (findText(emailTable, emailKey, true) >= 0) return AddResult.EMAIL_TAKEN;
+            if (findMobile(user.getMobile()) >= 0) return AddResult.MOBILE_TAKEN;
+            if (findText(idTable, idKey, false) >= 0) return AddResult.ID_TAKEN;
+
+            int slot = size;
+            if ((slot >>> CHUNK_BITS) == chunks.length) {
+                Chunk[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+                grown[chunks.length] = new Chunk();
+                chunks = grown;
             }
-            
-            if ("POST".equals(exchange.getRequestMethod())) {
-                try {
-                    String requestBody = new String(exchange.getRequestBody().readAllBytes());
-                    String[] params = requestBody.split("&");
-                    
-                    String name = "", email = "", location = "", gender = "";
-                    long mobile = 0;
-                    
-                    for (String param : params) {
-                        String[] kv = param.split("=", 2);
-                        if (kv.length == 2) {
-                            String key = URLDecoder.decode(kv[0], "UTF-8");
-                            String value = URLDecoder.decode(kv[1], "UTF-8");
-                            
-                            switch (key) {
-                                case "name": name = value; break;
-                                case "email": email = value; break;
-                                case "mobile": 
-                                    try { mobile = Long.parseLong(value); } catch (NumberFormatException e) { mobile = 0; }
-                                    break;
-                                case "location": location = value; break;
-                                case "gender": gender = value.toUpperCase(); break;
-                            }
-                        }
-                    }
-                    
-                    if (!isValidName(name) || !isValidEmail(email) || !isValidMobile(mobile) || 
-                        location.isEmpty() || !isValidGender(gender)) {
-                        sendResponse(exchange, 400, "{\"success\": false, \"message\": \"Invalid input data\"}");
-                        return;
-                    }
-                    
-                    if (isEmailTaken(email)) {
-                        sendResponse(exchange, 400, "{\"success\": false, \"message\": \"Email already registered\"}");
-                        return;
-                    }
-                    
-                    if (isMobileTaken(mobile)) {
-                        sendResponse(exchange, 400, "{\"success\": false, \"message\": \"Mobile number already registered\"}");
-                        return;
-                    }
-                    
-                    String receiverId = "REC-" + userNumericIdCounter++;
-                    users.add(new User(receiverId, name, email, null, location, mobile, "RECEIVER", gender));
-                    
-                    String response = "{\"success\": true, \"message\": \"Receiver registered successfully!\", \"userId\": \"" + receiverId + "\"}";
-                    sendResponse(exchange, 200, response);
-                    
-                } catch (Exception e) {
-                    sendResponse(exchange, 500, "{\"success\": false, \"message\": \"Registration failed: " + e.getMessage() + "\"}");
-                }
+            Chunk chunk = chunks[slot >>> CHUNK_BITS];
+            int i = slot & (CHUNK_SIZE - 1);
+            chunk.id[i] = appendText(idKey);
+            chunk.name[i] = appendText(utf8(user.getName()));
+            chunk.email[i] = appendText(utf8(user.getEmail()));
+            chunk.location[i] = locations.code(user.getLocation());
+            chunk.mobile[i] = user.getMobile();
+            BloodType bloodType = BloodType.parse(user.getBloodType());
+            chunk.bloodType[i] = (byte) (bloodType == null ? -1 : bloodType.ordinal());
+            Gender gender = Gender.parse(user.getGender());
+            chunk.gender[i] = (byte) (gender == null ? -1 : gender.ordinal());
+            chunk.role[i] = (byte) roles.code(user.getRole());
+            chunk.lastDonatedDay.set(i, epochDay(user.getLastDonatedDateTime()));
+
+            if ((slot + 1) * 2 > idTable.length) {
+                idTable = rehash(idTable, s -> hashText(column(s).id[s & (CHUNK_SIZE - 1)], false));
+                emailTable = rehash(emailTable, s -> hashText(column(s).email[s & (CHUNK_SIZE - 1)], true));
+                mobileTable = rehash(mobileTable, s -> hashMobile(column(s).mobile[s & (CHUNK_SIZE - 1)]));
             }
+            insert(idTable, hash(idKey), slot);
+            insert(emailTable, hash(emailKey), slot);
+            insert(mobileTable, hashMobile(user.getMobile()), slot);
+            size = slot + 1; // publishes the slot's columns
+            return AddResult.ADDED;
+        } finally {
+            lock.writeLock().unlock();
         }
     }
-    
-    class PostRequestHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            setCORSHeaders(exchange);
-            if ("OPTIONS".equals(exchange.getRequestMethod())) {
-                exchange.sendResponseHeaders(200, -1);
-                return;
-            }
-            
-            if ("POST".equals(exchange.getRequestMethod())) {
-                try {
-                    String requestBody = new String(exchange.getRequestBody().readAllBytes());
-                    String[] params = requestBody.split("&");
-                    
-                    String userId = "", bloodType = "", hospitalArea = "", seriousness = "";
-                    int unitsNeeded = 0;
-                    
-                    for (String param : params) {
-                        String[] kv = param.split("=", 2);
-                        if (kv.length == 2) {
-                            String key = URLDecoder.decode(kv[0], "UTF-8");
-                            String value = URLDecoder.decode(kv[1], "UTF-8");
-                            
-                            switch (key) {
-                                case "userId": userId = value; break;
-                                case "bloodType": bloodType = value.toUpperCase(); break;
-                                case "hospitalArea": hospitalArea = value; break;
-                                case "unitsNeeded": 
-                                    try { unitsNeeded = Integer.parseInt(value); } catch (NumberFormatException e) { unitsNeeded = 0; }
-                                    break;
-                                case "seriousness": seriousness = value.toUpperCase(); break;
-                            }
-                        }
-                    }
-                    
-                    final String finalUserId = userId;
-                    User user = users.stream().filter(u -> u.getId().equals(finalUserId)).findFirst().orElse(null);
-                    if (user == null || user.getRole().equals("DONOR")) {
-                        sendResponse(exchange, 400, "{\"success\": false, \"message\": \"Invalid user or only receivers can post requests\"}");
-                        return;
-                    }
-                    
-                    if (!isValidBloodType(bloodType) || hospitalArea.isEmpty() || 
-                        unitsNeeded < 1 || unitsNeeded > 10 || !isValidSeriousness(seriousness)) {
-                        sendResponse(exchange, 400, "{\"success\": false, \"message\": \"Invalid request data\"}");
-                        return;
-                    }
-                    
-                    LocalDateTime createdAt = LocalDateTime.now();
-                    String requestId = "REQ-" + requestNumericIdCounter++;
-                    requests.add(new BloodRequest(requestId, userId, bloodType, hospitalArea, unitsNeeded, seriousness, "OPEN", createdAt));
-                    
-                    String response = "{\"success\": true, \"message\": \"Blood request posted successfully!\", \"requestId\": \"" + requestId + "\"}";
-                    sendResponse(exchange, 200, response);
-                    
-                } catch (Exception e) {
-                    sendResponse(exchange, 500, "{\"success\": false, \"message\": \"Failed to post request: " + e.getMessage() + "\"}");
-                }
-            }
+
+    @Override
+    public User findById(String id) {
+        if (id == null) return null;
+        byte[] key = utf8(id);
+        lock.readLock().lock();
+        try {
+            int slot = findText(idTable, key, false);
+            return slot < 0 ? null : new Row(slot);
+        } finally {
+            lock.readLock().unlock();
         }
     }
-    
-    class GetRequestsHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            setCORSHeaders(exchange);
-            if ("GET".equals(exchange.getRequestMethod())) {
-                try {
-                    StringBuilder json = new StringBuilder("[");
-                    boolean first = true;
-                    
-                    for (BloodRequest request : requests) {
-                        if (request.getStatus().equals("OPEN")) {
-                            if (!first) json.append(",");
-                            json.append("{")
-                                .append("\"id\":\"").append(request.getId()).append("\",")
-                                .append("\"bloodType\":\"").append(request.getBloodType()).append("\",")
-                                .append("\"hospitalArea\":\"").append(request.getHospitalArea()).append("\",")
-                                .append("\"unitsNeeded\":").append(request.getUnitsNeeded()).append(",")
-                                .append("\"seriousness\":\"").append(request.getSeriousness()).append("\",")
-                                .append("\"status\":\"").append(request.getStatus()).append("\"")
-                                .append("}");
-                            first = false;
-                        }
-                    }
-                    json.append("]");
-                    
-                    sendResponse(exchange, 200, json.toString());
-                } catch (Exception e) {
-                    sendResponse(exchange, 500, "{\"error\": \"Failed to get requests\"}");
-                }
-            }
+
+    @Override
+    public User findById(String id, String role) {
+        User user = findById(id);
+        return user != null && role.equals(user.getRole()) ? user : null;
+    }
+
+    @Override
+    public boolean isEmailTaken(String email) {
+        if (email == null) return false;
+        byte[] key = utf8(emailKey(email));
+        lock.readLock().lock();
+        try {
+            return findText(emailTable, key, true) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isMobileTaken(long mobile) {
+        lock.readLock().lock();
+        try {
+            return findMobile(mobile) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Collection<User> all() {
+        return new Slots(-1, -1);
+    }
+
+    @Override
+    public Collection<User> withRole(String role) {
+        int code = roleCode(role);
+        return code < 0 ? Collections.emptyList() : new Slots(code, -1);
+    }
+
+    @Override
+    public Collection<User> donorsWithBloodType(BloodType bloodType) {
+        int code = roleCode("DONOR");
+        return code < 0 ? Collections.emptyList() : new Slots(code, bloodType.ordinal());
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // A live view of one slot; equal to any other view of the same slot
+    private final class Row extends User {
+        private final int slot;
+
+        Row(int slot) {
+            super(null, null, null, null, null, 0, null, null);
+            this.slot = slot;
+        }
+
+        private Chunk chunk() {
+            return column(slot);
+        }
+
+        private int index() {
+            return slot & (CHUNK_SIZE - 1);
+        }
+
+        @Override public String getId() { return text(chunk().id[index()]); }
+        @Override public String getName() { return text(chunk().name[index()]); }
+        @Override public String getEmail() { return text(chunk().email[index()]); }
+        @Override public String getLocation() { return locations.value(chunk().location[index()]); }
+        @Override public long getMobile() { return chunk().mobile[index()]; }
+        @Override public String getRole() { return roles.value(chunk().role[index()]); }
+
+        @Override
+        public String getBloodType() {
+            int code = chunk().bloodType[index()];
+            return code < 0 ? null : BLOOD_TYPES[code].getLabel();
+        }
+
+        @Override
+        public String getGender() {
+            int code = chunk().gender[index()];
+            return code < 0 ? null : GENDERS[code].name();
+        }
+
+        @Override
+        public LocalDateTime getLastDonatedDateTime() {
+            int day = chunk().lastDonatedDay.get(index());
+            return day == NEVER ? null : LocalDate.ofEpochDay(day).atStartOfDay();
+        }
+
+        @Override
+        public void setLastDonatedDateTime(LocalDateTime dateTime) {
+            chunk().lastDonatedDay.set(index(), epochDay(dateTime));
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Row && ((Row) other).slot == slot && ((Row) other).store() == CompactUserStore.this;
+        }
+
+        @Override
+        public int hashCode() {
+            return slot;
+        }
+
+        private CompactUserStore store() {
+            return CompactUserStore.this;
+        }
+    }
+
+    // Slots in registration order, optionally restricted to one role code and blood type ordinal
+    private final class Slots extends AbstractCollection<User> {
+        private final int role;
+        private final int bloodType;
+
+        Slots(int role, int bloodType) {
+            this.role = role;
+            this.bloodType = bloodType;
+        }
+
+        @Override
+        public Iterator<User> iterator() {
+            int end = size;
+            return new Iterator<User>() {
+                private int next = advance(0);
+
+                private int advance(int slot) {
+                    while (slot < end && !matches(slot)) slot++;
+                    return slot;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next < end;
+                }
+
+                @Override
+                public User next() {
+                    if (next >= end) throw new java.util.NoSuchElementException();
+                    User user = new Row(next);
+                    next = advance(next + 1);
+                    return user;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            if (role < 0) return CompactUserStore.this.size;
+            int count = 0;
+            for (int slot = 0, end = CompactUserStore.this.size; slot < end; slot++) {
+                if (matches(slot)) count++;
+            }
+            return count;
+        }
+
+        private boolean matches(int slot) {
+            Chunk chunk = column(slot);
+            int i = slot & (CHUNK_SIZE - 1);
+            return (role < 0 || chunk.role[i] == role) && (bloodType < 0 || chunk.bloodType[i] == bloodType);
+        }
+    }
+
+    private Chunk column(int slot) {
+        return chunks[slot >>> CHUNK_BITS];
+    }
+
+    private int roleCode(String role) {
+        lock.readLock().lock();
+        try {
+            Integer code = roles.codes.get(role);
+            return code == null ? -1 : code;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static int epochDay(LocalDateTime dateTime) {
+        return dateTime == null ? NEVER : (int) dateTime.toLocalDate().toEpochDay();
+    }
+
+    private static String emailKey(String email) {
+        return email == null ? null : email.toLowerCase(Locale.ROOT);
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+    // Text pages: a two-byte length, then the bytes. Returns the address, or -1 for null.
+    private int appendText(byte[] bytes) {
+        if (bytes == null) return -1;
+        if (bytes.length > 0xFFFF || bytes.length + 2 > PAGE_SIZE) {
+            throw new IllegalArgumentException("Field longer than " + (PAGE_SIZE - 2) + " bytes");
+        }
+        if (pageOffset + 2 + bytes.length > PAGE_SIZE) {
+            byte[][] grown = Arrays.copyOf(pages, pageCount + 1);
+            grown[pageCount++] = new byte[PAGE_SIZE];
+            pages = grown;
+            pageOffset = 0;
+        }
+        byte[] page = pages[pageCount - 1];
+        int address = ((pageCount - 1) << PAGE_BITS) | pageOffset;
+        page[pageOffset] = (byte) (bytes.length >>> 8);
+        page[pageOffset + 1] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, page, pageOffset + 2, bytes.length);
+        pageOffset += 2 + bytes.length;
+        return address;
+    }
+
+    private String text(int address) {
+        if (address < 0) return null;
+        byte[] page = pages[address >>> PAGE_BITS];
+        int offset = address & (PAGE_SIZE - 1);
+        int length = ((page[offset] & 0xFF) << 8) | (page[offset + 1] & 0xFF);
+        return new String(page, offset + 2, length, java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+    // Compares stored text with a key; lowerCase folds ASCII letters of the stored text first
+    private boolean textEquals(int address, byte[] key, boolean lowerCase) {
+        if (address < 0) return false;
+        byte[] page = pages[address >>> PAGE_BITS];
+        int offset = address & (PAGE_SIZE - 1);
+        int length = ((page[offset] & 0xFF) << 8) | (page[offset + 1] & 0xFF);
+        if (length != key.length) return false;
+        for (int i = 0; i < length; i++) {
+            byte b = page[offset + 2 + i];
+            if (lowerCase && b >= 'A' && b <= 'Z') b += 'a' - 'A';
+            if (b != key[i]) return false;
+        }
+        return true;
+    }
+
+    private int hashText(int address, boolean lowerCase) {
+        byte[] page = pages[address >>> PAGE_BITS];
+        int offset = address & (PAGE_SIZE - 1);
+        int length = ((page[offset] & 0xFF) << 8) | (page[offset + 1] & 0xFF);
+        int h = 1;
+        for (int i = 0; i < length; i++) {
+            byte b = page[offset + 2 + i];
+            if (lowerCase && b >= 'A' && b <= 'Z') b += 'a' - 'A';
+            h = 31 * h + b;
+        }
+        return spread(h);
+    }
+
+    private static int hash(byte[] key) {
+        return spread(key == null ? 0 : Arrays.hashCode(key));
+    }
+
+    private static int hashMobile(long mobile) {
+        return spread(Long.hashCode(mobile));
+    }
+
+    private static int spread(int h) {
+        return (h ^ (h >>> 16)) * 0x9E3779B1;
+    }
+
+    // Probes the id table, or with email set the email table, whose keys are compared case-insensitively
+    private int findText(int[] table, byte[] key, boolean email) {
+        if (key == null) return -1;
+        int mask = table.length - 1;
+        for (int i = hash(key) & mask; table[i] != 0; i = (i + 1) & mask) {
+            int slot = table[i] - 1;
+            Chunk chunk = column(slot);
+            int address = email ? chunk.email[slot & (CHUNK_SIZE - 1)] : chunk.id[slot & (CHUNK_SIZE - 1)];
+            if (textEquals(address, key, email)) return slot;
+        }
+        return -1;
+    }
+
+    private int findMobile(long mobile) {
+        int mask = mobileTable.length - 1;
+        for (int i = hashMobile(mobile) & mask; mobileTable[i] != 0; i = (i + 1) & mask) {
+            int slot = mobileTable[i] - 1;
+            if (column(slot).mobile[slot & (CHUNK_SIZE - 1)] == mobile) return slot;
+        }
+        return -1;
+    }
+
+    private static void insert(int[] table, int hash, int slot) {
+        int mask = table.length - 1;
+        int i = hash & mask;
+        while (table[i] != 0) i = (i + 1) & mask;
+        table[i] = slot + 1;
+    }
+
+    private interface SlotHash {
+        int of(int slot);
+    }
+
+    private int[] rehash(int[] table, SlotHash hasher) {
+        int[] grown = new int[table.length * 2];
+        for (int entry : table) {
+            if (entry != 0) insert(grown, hasher.of(entry - 1), entry - 1);
+        }
+        return grown;
+    }
+}
+
+// --- FilterIndex Class ---
+// Secondary index that answers any combination of equality filters with one ordered scan.
+// Each item is filed under every subset of its dimension values (2^dimensions groups) and each
+// group is a skip list ordered by sequence number, so a page costs O(log n + limit).
+class FilterIndex<T> {
+    static class Page<T> {
+        final List<T> items;
+        final Long nextCursor; // null on the last page
+
+        Page(List<T> items, Long nextCursor) {
+            this.items = items;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    private final int dimensions;
+    private final ConcurrentHashMap<List<String>, ConcurrentSkipListMap<Long, T>> groups = new ConcurrentHashMap<>();
+
+    public FilterIndex(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    // values must be normalized by the caller, one per dimension
+    public void add(long seq, T item, String... values) {
+        for (int mask = 0; mask < (1 << dimensions); mask++) {
+            groups.computeIfAbsent(key(mask, values), k -> new ConcurrentSkipListMap<>()).put(seq, item);
+        }
+    }
+
+    public void remove(long seq, String... values) {
+        for (int mask = 0; mask < (1 << dimensions); mask++) {
+            ConcurrentSkipListMap<Long, T> group = groups.get(key(mask, values));
+            if (group != null) group.remove(seq);
+        }
+    }
+
+    // A null filter matches any value in that dimension
+    public Collection<T> matching(String... filters) {
+        ConcurrentSkipListMap<Long, T> group = groups.get(Arrays.asList(filters));
+        return group == null ? Collections.emptyList() : Collections.unmodifiableCollection(group.values());
+    }
+
+    // Items after the cursor in sequence order; pass a null cursor for the first page
+    public Page<T> page(Long cursor, int limit, String... filters) {
+        ConcurrentSkipListMap<Long, T> group = groups.get(Arrays.asList(filters));
+        List<T> items = new ArrayList<>(Math.min(limit, 256));
+        if (group == null) return new Page<>(items, null);
+
+        Map<Long, T> tail = cursor == null ? group : group.tailMap(cursor, false);
+        Long last = null;
+        for (Map.Entry<Long, T> entry : tail.entrySet()) {
+            if (items.size() == limit) return new Page<>(items, last);
+            items.add(entry.getValue());
+            last = entry.getKey();
+        }
+        return new Page<>(items, null);
+    }
+
+    // Case- and whitespace-insensitive form of free-text dimension values such as locations
+    public static String normalize(String value) {
+        return value == null ? null : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private List<String> key(int mask, String[] values) {
+        String[] key = new String[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            if ((mask & (1 << i)) != 0) key[i] = values[i];
+        }
+        return Arrays.asList(key);
+    }
+}
+
+// --- EligibilityTracker Class ---
+// Keeps donors who can donate right now in an index filterable by blood type and location,
+// and donors still in their cooldown in a queue ordered by the moment they become eligible again.
+class EligibilityTracker {
+    // Notified whenever a donor enters or leaves the eligible set; may be called more than once per change
+    interface Listener {
+        void onEligible(User donor);
+        void onIneligible(User donor);
+    }
+
+    private final FilterIndex<User> eligible = new FilterIndex<>(2);
+    private final PriorityBlockingQueue<Cooldown> cooldowns = new PriorityBlockingQueue<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private static class Cooldown implements Comparable<Cooldown> {
+        final User donor;
+        final LocalDateTime eligibleAt;
+
+        Cooldown(User donor, LocalDateTime eligibleAt) {
+            this.donor = donor;
+            this.eligibleAt = eligibleAt;
+        }
+
+        @Override
+        public int compareTo(Cooldown other) {
+            return eligibleAt.compareTo(other.eligibleAt);
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public static int cooldownDays(String gender) {
+        return "MALE".equalsIgnoreCase(gender) ? 120 : 180;
+    }
+
+    public static LocalDateTime eligibleAt(User donor) {
+        LocalDateTime lastDonated = donor.getLastDonatedDateTime();
+        return lastDonated == null ? null : lastDonated.plusDays(cooldownDays(donor.getGender()));
+    }
+
+    // Registers a new donor, or re-files one whose last donation date just changed
+    public void track(User donor) {
+        BloodType bloodType = BloodType.parse(donor.getBloodType());
+        if (bloodType == null) return;
+
+        LocalDateTime eligibleAt = eligibleAt(donor);
+        if (eligibleAt == null || !eligibleAt.isAfter(LocalDateTime.now())) {
+            markEligible(donor);
+        } else {
+            eligible.remove(sequence(donor), dimensions(donor));
+            for (Listener listener : listeners) listener.onIneligible(donor);
+            cooldowns.add(new Cooldown(donor, eligibleAt));
+        }
+    }
+
+    // Moves every donor whose cooldown has expired into the eligible index
+    public void promoteDue() {
+        Cooldown head = cooldowns.peek();
+        if (head == null || head.eligibleAt.isAfter(LocalDateTime.now())) return;
+
+        synchronized (cooldowns) {
+            LocalDateTime now = LocalDateTime.now();
+            while ((head = cooldowns.peek()) != null && !head.eligibleAt.isAfter(now)) {
+                cooldowns.poll();
+                if (head.eligibleAt.equals(eligibleAt(head.donor))) {
+                    markEligible(head.donor);
+                }
+            }
+        }
+    }
+
+    public Collection<User> eligibleDonors(BloodType bloodType) {
+        promoteDue();
+        return eligible.matching(bloodType.getLabel(), null);
+    }
+
+    // A page of eligible donors in id order; null filters match everything
+    public FilterIndex.Page<User> eligibleDonors(BloodType bloodType, String location, Long cursor, int limit) {
+        promoteDue();
+        return eligible.page(cursor, limit, bloodType == null ? null : bloodType.getLabel(), FilterIndex.normalize(location));
+    }
+
+    private void markEligible(User donor) {
+        eligible.add(sequence(donor), donor, dimensions(donor));
+        for (Listener listener : listeners) listener.onEligible(donor);
+    }
+
+    private static long sequence(User donor) {
+        return BloodDonationWebApp.numericSuffix(donor.getId());
+    }
+
+    private static String[] dimensions(User donor) {
+        return new String[] { BloodType.parse(donor.getBloodType()).getLabel(), FilterIndex.normalize(donor.getLocation()) };
+    }
+
+    public int pendingCount() {
+        return cooldowns.size();
+    }
+}
+
+// --- LockStripes Class ---
+// Fixed pool of locks shared by hash, so unrelated keys rarely contend and memory stays bounded.
+class LockStripes {
+    private final ReentrantLock[] locks;
+
+    public LockStripes(int count) {
+        int size = Integer.highestOneBit(Math.max(1, count - 1)) << 1;
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    // Locks the stripes of both keys in index order, so two callers can never wait on each other
+    public void lock(Object first, Object second) {
+        int a = index(first), b = index(second);
+        locks[Math.min(a, b)].lock();
+        if (a != b) locks[Math.max(a, b)].lock();
+    }
+
+    public void unlock(Object first, Object second) {
+        int a = index(first), b = index(second);
+        if (a != b) locks[Math.max(a, b)].unlock();
+        locks[Math.min(a, b)].unlock();
+    }
+
+    // For batch operations whose keys span most stripes anyway
+    public void lockAll() {
+        for (ReentrantLock lock : locks) lock.lock();
+    }
+
+    public void unlockAll() {
+        for (int i = locks.length - 1; i >= 0; i--) locks[i].unlock();
+    }
+
+    private int index(Object key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (locks.length - 1);
+    }
+}
+
+// --- Gazetteer Class ---
+// Offline place-name lookup backed by a bundled CSV of name,latitude,longitude rows.
+class Gazetteer {
+    static class Coordinates {
+        final double latitude;
+        final double longitude;
+
+        Coordinates(double latitude, double longitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    private final Map<String, Coordinates> places = new HashMap<>();
+
+    public void load(File file) throws IOException {
+        if (!file.isFile()) {
+            System.err.println("⚠️ Gazetteer " + file.getPath() + " not found; only \"lat,lon\" locations will be geocoded");
+            return;
+        }
+        for (String line : Files.readAllLines(file.toPath(), java.nio.charset.StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.startsWith("#") || line.startsWith("name,")) continue;
+            String[] fields = line.split(",");
+            if (fields.length != 3) continue;
+            try {
+                places.put(FilterIndex.normalize(fields[0]), new Coordinates(Double.parseDouble(fields[1]), Double.parseDouble(fields[2])));
+            } catch (NumberFormatException e) { /* skip malformed row */ }
+        }
+    }
+
+    // Resolves free text such as "Banjara Hills, Hyderabad", "500001" or "17.38,78.48"; null if unknown
+    public Coordinates resolve(String location) {
+        if (location == null) return null;
+        String text = FilterIndex.normalize(location);
+        Coordinates exact = places.get(text);
+        if (exact != null) return exact;
+
+        String[] parts = text.split(",");
+        if (parts.length == 2) {
+            try {
+                double latitude = Double.parseDouble(parts[0].trim());
+                double longitude = Double.parseDouble(parts[1].trim());
+                if (Math.abs(latitude) <= 90 && Math.abs(longitude) <= 180) return new Coordinates(latitude, longitude);
+            } catch (NumberFormatException e) { /* not a coordinate pair */ }
+        }
+        // Most specific part last is the common address order, so try from the end
+        for (int i = parts.length - 1; i >= 0; i--) {
+            Coordinates match = places.get(parts[i].trim());
+            if (match != null) return match;
+        }
+        for (String token : text.split("[^a-z0-9]+")) {
+            if (token.length() == 6 && places.containsKey(token)) return places.get(token);
+        }
+        return null;
+    }
+
+    public int size() {
+        return places.size();
+    }
+
+    public static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+            + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 6371.0 * 2 * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
+
+// --- DonorGeoIndex Class ---
+// Grid index of eligible donors per blood type. Donors geocoded to the same point share one
+// entry, so a k-nearest query visits grid cells and distinct points rather than every donor.
+class DonorGeoIndex implements EligibilityTracker.Listener {
+    static class Nearby {
+        final User donor;
+        final double distanceKm;
+
+        Nearby(User donor, double distanceKm) {
+            this.donor = donor;
+            this.distanceKm = distanceKm;
+        }
+    }
+
+    private static class Point {
+        final double latitude;
+        final double longitude;
+        final Set<User> donors = ConcurrentHashMap.newKeySet();
+
+        Point(double latitude, double longitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    private static final double CELL_DEGREES = 0.25;
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    // Any two points in rows k apart are at least k - 1 of these apart, whatever their longitudes
+    private static final double CELL_HEIGHT_KM = Math.toRadians(CELL_DEGREES) * EARTH_RADIUS_KM;
+    private static final double MAX_LATITUDE = 89.9;
+    // Cells each side of the origin that already cover every latitude and every longitude
+    private static final int MAX_SPAN = (int) (180 / CELL_DEGREES);
+
+    private final Gazetteer gazetteer;
+    // blood type -> grid cell -> exact point -> donors
+    private final Map<BloodType, ConcurrentHashMap<Long, ConcurrentHashMap<Long, Point>>> cells = new EnumMap<>(BloodType.class);
+
+    public DonorGeoIndex(Gazetteer gazetteer) {
+        this.gazetteer = gazetteer;
+        for (BloodType type : BloodType.values()) {
+            cells.put(type, new ConcurrentHashMap<>());
+        }
+    }
+
+    @Override
+    public void onEligible(User donor) {
+        BloodType bloodType = BloodType.parse(donor.getBloodType());
+        Gazetteer.Coordinates at = gazetteer.resolve(donor.getLocation());
+        if (bloodType == null || at == null) return;
+        cells.get(bloodType)
+            .computeIfAbsent(cellKey(row(at.latitude), column(at.longitude)), k -> new ConcurrentHashMap<>())
+            .computeIfAbsent(pointKey(at), k -> new Point(at.latitude, at.longitude))
+            .donors.add(donor);
+    }
+
+    @Override
+    public void onIneligible(User donor) {
+        BloodType bloodType = BloodType.parse(donor.getBloodType());
+        Gazetteer.Coordinates at = gazetteer.resolve(donor.getLocation());
+        if (bloodType == null || at == null) return;
+        ConcurrentHashMap<Long, Point> cell = cells.get(bloodType).get(cellKey(row(at.latitude), column(at.longitude)));
+        Point point = cell == null ? null : cell.get(pointKey(at));
+        if (point != null) point.donors.remove(donor);
+    }
+
+    // Up to limit donors of the given blood types within radiusKm, nearest first.
+    // Cells are searched in rectangular rings around the origin's cell, visiting only each ring's perimeter.
+    // A ring is one cell tall and as many cells wide as it takes to span the same distance at the
+    // poleward edge of the search, so everything outside ring k is at least k cell heights away and the
+    // search stops as soon as the k-th nearest donor found so far is closer than that.
+    public List<Nearby> nearest(Gazetteer.Coordinates origin, BloodType[] bloodTypes, double radiusKm, int limit) {
+        List<Point> candidates = new ArrayList<>();
+        int centerRow = row(origin.latitude);
+        int centerColumn = column(origin.longitude);
+        double poleward = Math.min(MAX_LATITUDE, Math.abs(origin.latitude) + Math.toDegrees(radiusKm / EARTH_RADIUS_KM));
+        int columnsPerRing = (int) Math.min(MAX_SPAN, Math.ceil(1 / Math.cos(Math.toRadians(poleward))));
+        int maxRing = (int) Math.min(MAX_SPAN, Math.ceil(radiusKm / CELL_HEIGHT_KM));
+
+        int found = 0;
+        int previousSpan = -1;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            int span = (int) Math.min(MAX_SPAN, (long) ring * columnsPerRing);
+            for (int r = centerRow - ring; r <= centerRow + ring; r++) {
+                if (r == centerRow - ring || r == centerRow + ring) {
+                    found += collect(origin, bloodTypes, radiusKm, r, centerColumn - span, centerColumn + span, candidates);
+                } else if (span > previousSpan) {
+                    found += collect(origin, bloodTypes, radiusKm, r, centerColumn - span, centerColumn - previousSpan - 1, candidates);
+                    found += collect(origin, bloodTypes, radiusKm, r, centerColumn + previousSpan + 1, centerColumn + span, candidates);
+                }
+            }
+            previousSpan = span;
+            if (found >= limit) {
+                candidates.sort((a, b) -> Double.compare(distance(origin, a), distance(origin, b)));
+                if (kthDistance(origin, candidates, limit) <= ring * CELL_HEIGHT_KM) break;
+            }
+        }
+
+        candidates.sort((a, b) -> Double.compare(distance(origin, a), distance(origin, b)));
+        List<Nearby> result = new ArrayList<>(Math.min(limit, 256));
+        for (Point point : candidates) {
+            double distanceKm = distance(origin, point);
+            for (User donor : point.donors) {
+                if (result.size() == limit) return result;
+                result.add(new Nearby(donor, distanceKm));
+            }
+        }
+        return result;
+    }
+
+    // Adds the occupied points within radiusKm of cells [fromColumn, toColumn] in one row, returning their donor count
+    private int collect(Gazetteer.Coordinates origin, BloodType[] bloodTypes, double radiusKm,
+                        int r, int fromColumn, int toColumn, List<Point> candidates) {
+        int found = 0;
+        for (int c = fromColumn; c <= toColumn; c++) {
+            for (BloodType bloodType : bloodTypes) {
+                ConcurrentHashMap<Long, Point> cell = cells.get(bloodType).get(cellKey(r, c));
+                if (cell == null) continue;
+                for (Point point : cell.values()) {
+                    if (!point.donors.isEmpty() && distance(origin, point) <= radiusKm) {
+                        candidates.add(point);
+                        found += point.donors.size();
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private static double kthDistance(Gazetteer.Coordinates origin, List<Point> sortedPoints, int k) {
+        int seen = 0;
+        for (Point point : sortedPoints) {
+            seen += point.donors.size();
+            if (seen >= k) return distance(origin, point);
+        }
+        return Double.MAX_VALUE;
+    }
+
+    private static double distance(Gazetteer.Coordinates origin, Point point) {
+        return Gazetteer.distanceKm(origin.latitude, origin.longitude, point.latitude, point.longitude);
+    }
+
+    private static int row(double latitude) {
+        return (int) Math.floor(latitude / CELL_DEGREES);
+    }
+
+    private static int column(double longitude) {
+        return (int) Math.floor(longitude / CELL_DEGREES);
+    }
+
+    private static long cellKey(int row, int column) {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    // Exact to about a metre, which is far finer than any gazetteer entry
+    private static long pointKey(Gazetteer.Coordinates at) {
+        return (Math.round((at.latitude + 90) * 1e5) << 32) | Math.round((at.longitude + 180) * 1e5);
+    }
+}
+
+// --- InventoryStats Class ---
+// Dashboard counters kept up to date on every register, post and donate event, so a stats query reads
+// a handful of adders instead of scanning users and requests:
+// donors per blood type x location x eligibility, and open units/requests per blood type x seriousness.
+class InventoryStats implements EligibilityTracker.Listener {
+    static class DonorCounts {
+        final LongAdder eligible = new LongAdder();
+        final LongAdder ineligible = new LongAdder();
+    }
+
+    static class OpenCounts {
+        final LongAdder units = new LongAdder();
+        final LongAdder requests = new LongAdder();
+    }
+
+    private static final DonorCounts NO_DONORS = new DonorCounts();
+
+    // Keyed by blood-type label + '|' + normalized location
+    private final ConcurrentHashMap<String, DonorCounts> donorsByArea = new ConcurrentHashMap<>();
+    private final Map<BloodType, DonorCounts> donorsByBloodType = new EnumMap<>(BloodType.class);
+    // Last state counted per donor, so repeated listener callbacks move a donor between counters at most once
+    private final ConcurrentHashMap<String, Boolean> countedAsEligible = new ConcurrentHashMap<>();
+    private final OpenCounts[][] open = new OpenCounts[BloodType.values().length][Seriousness.values().length];
+
+    public InventoryStats() {
+        for (BloodType bloodType : BloodType.values()) {
+            donorsByBloodType.put(bloodType, new DonorCounts());
+            for (Seriousness seriousness : Seriousness.values()) {
+                open[bloodType.ordinal()][seriousness.ordinal()] = new OpenCounts();
+            }
+        }
+    }
+
+    @Override
+    public void onEligible(User donor) {
+        count(donor, true);
+    }
+
+    @Override
+    public void onIneligible(User donor) {
+        count(donor, false);
+    }
+
+    private void count(User donor, boolean eligible) {
+        BloodType bloodType = BloodType.parse(donor.getBloodType());
+        if (bloodType == null) return;
+        Boolean previous = countedAsEligible.put(donor.getId(), eligible);
+        if (previous != null && previous == eligible) return;
+
+        DonorCounts area = donorsByArea.computeIfAbsent(areaKey(bloodType, donor.getLocation()), k -> new DonorCounts());
+        DonorCounts total = donorsByBloodType.get(bloodType);
+        (eligible ? area.eligible : area.ineligible).increment();
+        (eligible ? total.eligible : total.ineligible).increment();
+        if (previous != null) {
+            (eligible ? area.ineligible : area.eligible).decrement();
+            (eligible ? total.ineligible : total.eligible).decrement();
+        }
+    }
+
+    // Adds (or with negative arguments removes) open units and requests
+    public void addOpen(String bloodType, String seriousness, int units, int requests) {
+        BloodType type = BloodType.parse(bloodType);
+        Seriousness level = Seriousness.parse(seriousness);
+        if (type == null || level == null) return;
+        OpenCounts counts = open[type.ordinal()][level.ordinal()];
+        counts.units.add(units);
+        counts.requests.add(requests);
+    }
+
+    // A null location covers every area
+    public DonorCounts donors(BloodType bloodType, String location) {
+        if (location == null) return donorsByBloodType.get(bloodType);
+        return donorsByArea.getOrDefault(areaKey(bloodType, location), NO_DONORS);
+    }
+
+    public OpenCounts open(BloodType bloodType, Seriousness seriousness) {
+        return open[bloodType.ordinal()][seriousness.ordinal()];
+    }
+
+    private static String areaKey(BloodType bloodType, String location) {
+        return bloodType.getLabel() + '|' + FilterIndex.normalize(location);
+    }
+}
+
+// --- DonationHistory Class ---
+// Donations indexed by donor and by request, each in a skip list keyed by the donation's id sequence, so
+// a history page costs O(log n + limit) however long the log grows. Ids are handed out as donations are
+// recorded, so sequence order is time order; a per-day bucket of the first sequence seen lets a "since"
+// date become a sequence bound. Donations moved to the archive leave the skip lists but keep their day
+// buckets, and pages continue into the archive's own indexes with the same cursor.
+class DonationHistory {
+    private final ConcurrentHashMap<String, ConcurrentSkipListMap<Long, Donation>> byDonor = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConcurrentSkipListMap<Long, Donation>> byRequest = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<LocalDate, Long> firstSequenceByDay = new ConcurrentSkipListMap<>();
+    private final Archive archive;
+
+    public DonationHistory(Archive archive) {
+        this.archive = archive;
+    }
+
+    public void add(Donation donation) {
+        long seq = BloodDonationWebApp.numericSuffix(donation.getId());
+        byDonor.computeIfAbsent(donation.getDonorId(), k -> new ConcurrentSkipListMap<>()).put(seq, donation);
+        byRequest.computeIfAbsent(donation.getRequestId(), k -> new ConcurrentSkipListMap<>()).put(seq, donation);
+        noteDay(donation);
+    }
+
+    // Called once the donation is safely in the archive
+    public void remove(Donation donation) {
+        long seq = BloodDonationWebApp.numericSuffix(donation.getId());
+        removeFrom(byDonor, donation.getDonorId(), seq);
+        removeFrom(byRequest, donation.getRequestId(), seq);
+    }
+
+    // Archived donations are not added, but still bound "since" queries
+    public void noteDay(Donation donation) {
+        firstSequenceByDay.merge(donation.getDonationDateTime().toLocalDate(),
+            (long) BloodDonationWebApp.numericSuffix(donation.getId()), Math::min);
+    }
+
+    // Newest first; since (inclusive) and cursor may be null
+    public FilterIndex.Page<Donation> forDonor(String donorId, LocalDate since, Long cursor, int limit) throws IOException {
+        return page(byDonor.get(donorId), archive.donationsForDonor(donorId), since, cursor, limit);
+    }
+
+    public FilterIndex.Page<Donation> forRequest(String requestId, LocalDate since, Long cursor, int limit) throws IOException {
+        return page(byRequest.get(requestId), archive.donationsForRequest(requestId), since, cursor, limit);
+    }
+
+    public int countForDonor(String donorId) {
+        ConcurrentSkipListMap<Long, Donation> donations = byDonor.get(donorId);
+        return (donations == null ? 0 : donations.size()) + archive.donationsForDonor(donorId).size();
+    }
+
+    private FilterIndex.Page<Donation> page(ConcurrentSkipListMap<Long, Donation> donations, NavigableMap<Long, Long> archived,
+                                            LocalDate since, Long cursor, int limit) throws IOException {
+        NavigableMap<Long, Donation> range = donations == null ? Collections.emptyNavigableMap() : donations;
+        if (since != null) {
+            Map.Entry<LocalDate, Long> firstDay = firstSequenceByDay.ceilingEntry(since);
+            if (firstDay == null) return new FilterIndex.Page<>(new ArrayList<>(), null);
+            range = range.tailMap(firstDay.getValue(), true);
+            archived = archived.tailMap(firstDay.getValue(), true);
+        }
+        if (cursor != null) {
+            range = range.headMap(cursor, false);
+            archived = archived.headMap(cursor, false);
+        }
+        return Archive.mergePage(range, archived, archive::readDonation, true, limit);
+    }
+
+    private static void removeFrom(ConcurrentHashMap<String, ConcurrentSkipListMap<Long, Donation>> index, String key, long seq) {
+        ConcurrentSkipListMap<Long, Donation> donations = index.get(key);
+        if (donations != null) donations.remove(seq);
+    }
+}
+
+// --- MatchPlanner Class ---
+// Periodic batch assignment of eligible donors to open requests. Requests are served most urgent first,
+// then scarcest recipient type first (O- and AB- have the fewest compatible donors), then oldest first.
+// Each request takes one donor per missing unit, preferring donors in its own area and the donor types
+// in BloodType.donorsFor order, so universal O- donors are used last. A donor gets at most one proposal
+// per run, and each run starts further along every blood type's donor list so proposals rotate. The
+// result is published as one immutable map that handlers read without locking.
+class MatchPlanner {
+    private static final BloodType[] SCARCEST_FIRST = {
+        BloodType.O_NEG, BloodType.AB_NEG, BloodType.B_NEG, BloodType.A_NEG,
+        BloodType.AB_POS, BloodType.B_POS, BloodType.A_POS, BloodType.O_POS
+    };
+    private static final int[] SCARCITY_RANK = new int[BloodType.values().length];
+
+    static {
+        for (int i = 0; i < SCARCEST_FIRST.length; i++) SCARCITY_RANK[SCARCEST_FIRST[i].ordinal()] = i;
+    }
+
+    interface RequestSource {
+        Collection<BloodRequest> open();
+    }
+
+    interface DonorSource {
+        Collection<User> eligible(BloodType bloodType);
+    }
+
+    static class Proposal {
+        final BloodRequest request;
+        final User donor;
+        final LocalDateTime proposedAt;
+
+        Proposal(BloodRequest request, User donor, LocalDateTime proposedAt) {
+            this.request = request;
+            this.donor = donor;
+            this.proposedAt = proposedAt;
+        }
+    }
+
+    private final RequestSource openRequests;
+    private final DonorSource donors;
+    private final int[] rotation = new int[BloodType.values().length];
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "matcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // At most one run waits behind the one in progress, however many requests arrive meanwhile
+    private final AtomicBoolean queued = new AtomicBoolean();
+    private volatile Map<String, Proposal> proposalsByDonor = Collections.emptyMap();
+    private volatile long lastRunMillis;
+
+    public MatchPlanner(RequestSource openRequests, DonorSource donors) {
+        this.openRequests = openRequests;
+        this.donors = donors;
+    }
+
+    public void trigger() {
+        if (queued.compareAndSet(false, true)) {
+            runner.execute(() -> {
+                queued.set(false);
+                try {
+                    run();
+                } catch (RuntimeException e) {
+                    System.err.println("❌ Auto-matching failed: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    public void run() {
+        long started = System.nanoTime();
+        proposalsByDonor = Collections.unmodifiableMap(plan());
+        lastRunMillis = (System.nanoTime() - started) / 1_000_000;
+    }
+
+    public Proposal proposalFor(String donorId) {
+        return proposalsByDonor.get(donorId);
+    }
+
+    public int proposalCount() {
+        return proposalsByDonor.size();
+    }
+
+    public long lastRunMillis() {
+        return lastRunMillis;
+    }
+
+    // Only ever called on the runner thread (or directly by a single caller), so rotation needs no locking
+    Map<String, Proposal> plan() {
+        List<BloodRequest> requests = new ArrayList<>();
+        List<BloodRequest.State> states = new ArrayList<>();
+        for (BloodRequest request : openRequests.open()) {
+            BloodRequest.State state = request.getState();
+            if (state.isOpen() && state.unitsNeeded > 0 && BloodType.parse(request.getBloodType()) != null) {
+                requests.add(request);
+                states.add(state);
+            }
+        }
+        Integer[] order = new Integer[requests.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> compare(requests.get(a), requests.get(b)));
+
+        Pool[] pools = new Pool[BloodType.values().length];
+        Map<String, Proposal> proposals = new HashMap<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (int i : order) {
+            BloodRequest request = requests.get(i);
+            BloodType[] donorTypes = BloodType.donorsFor(BloodType.parse(request.getBloodType()));
+            String area = FilterIndex.normalize(request.getHospitalArea());
+            for (int unit = 0; unit < states.get(i).unitsNeeded; unit++) {
+                User donor = take(pools, donorTypes, area);
+                if (donor == null) donor = take(pools, donorTypes, null);
+                if (donor == null) break;
+                proposals.put(donor.getId(), new Proposal(request, donor, now));
+            }
+        }
+
+        for (BloodType type : BloodType.values()) {
+            Pool pool = pools[type.ordinal()];
+            if (pool != null && pool.donors.length > 0) {
+                rotation[type.ordinal()] = (pool.start + pool.takenCount) % pool.donors.length;
+            }
+        }
+        return proposals;
+    }
+
+    private User take(Pool[] pools, BloodType[] donorTypes, String area) {
+        for (BloodType type : donorTypes) {
+            Pool pool = pools[type.ordinal()];
+            if (pool == null) {
+                pool = new Pool(donors.eligible(type), rotation[type.ordinal()]);
+                pools[type.ordinal()] = pool;
+            }
+            User donor = area == null ? pool.takeAny() : pool.takeNear(area);
+            if (donor != null) return donor;
+        }
+        return null;
+    }
+
+    private static int compare(BloodRequest a, BloodRequest b) {
+        int bySeriousness = Integer.compare(seriousnessRank(a), seriousnessRank(b));
+        if (bySeriousness != 0) return bySeriousness;
+        int byScarcity = Integer.compare(SCARCITY_RANK[BloodType.parse(a.getBloodType()).ordinal()],
+            SCARCITY_RANK[BloodType.parse(b.getBloodType()).ordinal()]);
+        if (byScarcity != 0) return byScarcity;
+        return Long.compare(BloodDonationWebApp.numericSuffix(a.getId()), BloodDonationWebApp.numericSuffix(b.getId()));
+    }
+
+    private static int seriousnessRank(BloodRequest request) {
+        Seriousness seriousness = Seriousness.parse(request.getSeriousness());
+        return seriousness == null ? Seriousness.values().length : seriousness.ordinal();
+    }
+
+    // One blood type's eligible donors for a single run, starting at the rotation offset. Donors of the same
+    // area are chained through nextInArea, so both "near" and "any" picks cost amortized O(1).
+    private static final class Pool {
+        final User[] donors;
+        final int start;
+        final boolean[] taken;
+        final int[] nextInArea;
+        final HashMap<String, int[]> areaHeads = new HashMap<>();
+        int cursor;
+        int takenCount;
+
+        Pool(Collection<User> eligible, int rotation) {
+            User[] snapshot = eligible.toArray(new User[0]);
+            int n = snapshot.length;
+            start = n == 0 ? 0 : rotation % n;
+            donors = new User[n];
+            for (int i = 0; i < n; i++) donors[i] = snapshot[(start + i) % n];
+            taken = new boolean[n];
+            nextInArea = new int[n];
+            for (int i = n - 1; i >= 0; i--) {
+                int[] head = areaHeads.computeIfAbsent(FilterIndex.normalize(donors[i].getLocation()), k -> new int[] { -1 });
+                nextInArea[i] = head[0];
+                head[0] = i;
+            }
+        }
+
+        User takeNear(String area) {
+            int[] head = areaHeads.get(area);
+            if (head == null) return null;
+            while (head[0] >= 0 && taken[head[0]]) head[0] = nextInArea[head[0]];
+            return head[0] < 0 ? null : take(head[0]);
+        }
+
+        User takeAny() {
+            while (cursor < donors.length && taken[cursor]) cursor++;
+            return cursor < donors.length ? take(cursor) : null;
+        }
+
+        private User take(int i) {
+            taken[i] = true;
+            takenCount++;
+            return donors[i];
+        }
+    }
+}
+
+// --- Journal Class ---
+// Append-only, CRC-framed log of every state mutation plus periodic binary snapshots.
+// A single writer thread drains whatever is queued into one write and one fsync
+// (group commit), so concurrent handlers share the cost of each force().
+class Journal {
+    interface Listener {
+        void onUser(User user);
+        void onRequest(BloodRequest request);
+        // fromSnapshot donations are already reflected in the restored users and requests
+        void onDonation(Donation donation, boolean fromSnapshot);
+        void onVerified(String userId);
+    }
+
+    private static final byte USER = 1, REQUEST = 2, DONATION = 3, VERIFIED = 4;
+    private static final int SNAPSHOT_MAGIC = 0x53415632; // "SAV2": SAV1 plus verified user ids
+    private static final int SNAPSHOT_MAGIC_V1 = 0x53415631; // "SAV1", still readable
+    private static final int MAX_BATCH = 1024;
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String SNAPSHOT_TEMP_FILE = "snapshot.tmp";
+
+    private final File dir;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong lastSegmentSeq = new AtomicLong();
+    private FileChannel segment; // owned by the writer thread after open()
+    private Thread writer;
+    private volatile boolean closed;
+    private volatile CompletableFuture<Void> lastRotation = CompletableFuture.completedFuture(null);
+
+    private static class Pending {
+        final byte[] frame;
+        final long rotateTo; // > 0 for a segment switch instead of a record
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(byte[] frame, long rotateTo) {
+            this.frame = frame;
+            this.rotateTo = rotateTo;
+        }
+    }
+
+    public Journal(File dir) {
+        this.dir = dir;
+    }
+
+    // Restores the last snapshot, replays the segments written after it, then starts appending
+    public void open(Listener listener) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create data directory " + dir.getAbsolutePath());
+        }
+
+        long fromSeq = 1;
+        File snapshot = new File(dir, SNAPSHOT_FILE);
+        if (snapshot.isFile()) {
+            fromSeq = readSnapshot(snapshot, listener);
+        }
+
+        long maxSeq = fromSeq - 1;
+        for (long seq : segmentSeqs()) {
+            if (seq < fromSeq) {
+                Files.deleteIfExists(segmentFile(seq).toPath());
+            } else {
+                replaySegment(segmentFile(seq), listener);
+                maxSeq = Math.max(maxSeq, seq);
+            }
+        }
+
+        lastSegmentSeq.set(maxSeq + 1);
+        segment = openSegment(maxSeq + 1);
+        writer = new Thread(this::writeLoop, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public CompletableFuture<Void> appendUser(User user) {
+        return append(USER, out -> writeUser(out, user));
+    }
+
+    public CompletableFuture<Void> appendRequest(BloodRequest request) {
+        return append(REQUEST, out -> writeRequest(out, request));
+    }
+
+    public CompletableFuture<Void> appendDonation(Donation donation) {
+        return append(DONATION, out -> writeDonation(out, donation));
+    }
+
+    public CompletableFuture<Void> appendVerified(String userId) {
+        return append(VERIFIED, out -> writeString(out, userId));
+    }
+
+    // Writes the snapshot to a temp file and switches appends to a new segment.
+    // The caller must keep mutations paused while this runs so the cut is consistent.
+    public long prepareSnapshot(Collection<User> users, Collection<BloodRequest> requests, Collection<Donation> donations,
+                                Collection<String> verifiedUserIds) throws IOException {
+        long fromSeq = lastSegmentSeq.incrementAndGet();
+        Pending rotation = new Pending(null, fromSeq);
+        lastRotation = rotation.done;
+        queue.add(rotation);
+
+        File temp = new File(dir, SNAPSHOT_TEMP_FILE);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(fromSeq);
+            out.writeInt(users.size());
+            for (User user : users) writeUser(out, user);
+            out.writeInt(requests.size());
+            for (BloodRequest request : requests) writeRequest(out, request);
+            out.writeInt(donations.size());
+            for (Donation donation : donations) writeDonation(out, donation);
+            out.writeInt(verifiedUserIds.size());
+            for (String userId : verifiedUserIds) writeString(out, userId);
+        }
+        return fromSeq;
+    }
+
+    // Makes the prepared snapshot durable and drops the segments it supersedes; no pause needed
+    public void commitSnapshot(long fromSeq) throws IOException {
+        lastRotation.join();
+        File temp = new File(dir, SNAPSHOT_TEMP_FILE);
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp.toPath(), new File(dir, SNAPSHOT_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (long seq : segmentSeqs()) {
+            if (seq < fromSeq) Files.deleteIfExists(segmentFile(seq).toPath());
+        }
+    }
+
+    // Flushes everything queued so far and stops the writer
+    public void close() {
+        closed = true;
+        if (writer == null) return;
+        try {
+            writer.join();
+            segment.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("⚠️ Failed to close journal: " + e.getMessage());
+        }
+    }
+
+    interface FieldWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private CompletableFuture<Void> append(byte type, FieldWriter fields) {
+        if (closed) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IOException("Journal is closed"));
+            return failed;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0); // length, patched below
+            out.writeInt(0); // checksum, patched below
+            out.writeByte(type);
+            fields.write(out);
+            byte[] frame = bytes.toByteArray();
+
+            CRC32 crc = new CRC32();
+            crc.update(frame, 8, frame.length - 8);
+            ByteBuffer header = ByteBuffer.wrap(frame, 0, 8);
+            header.putInt(frame.length - 8).putInt((int) crc.getValue());
+
+            Pending pending = new Pending(frame, 0);
+            queue.add(pending);
+            return pending.done;
+        } catch (IOException e) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    // A failed batch is cut back off the segment, so a record is replayed only if its append succeeded
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>();
+        List<ByteBuffer> frames = new ArrayList<>();
+        while (!closed || !queue.isEmpty()) {
+            int completed = 0;
+            long start = -1;
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+
+                start = segment.size();
+                for (int i = 0; i < batch.size(); i++) {
+                    Pending pending = batch.get(i);
+                    if (pending.rotateTo == 0) {
+                        frames.add(ByteBuffer.wrap(pending.frame));
+                        continue;
+                    }
+                    // Settle what the old segment holds, and only let go of it once the new one is open
+                    writeFrames(frames);
+                    segment.force(false);
+                    FileChannel previous = segment;
+                    segment = openSegment(pending.rotateTo);
+                    start = segment.size();
+                    closeQuietly(previous);
+                    for (; completed <= i; completed++) batch.get(completed).done.complete(null);
+                }
+                writeFrames(frames);
+                segment.force(false);
+                for (; completed < batch.size(); completed++) batch.get(completed).done.complete(null);
+            } catch (IOException e) {
+                if (start >= 0) truncate(start);
+                for (; completed < batch.size(); completed++) batch.get(completed).done.completeExceptionally(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+                frames.clear();
+            }
+        }
+    }
+
+    private void truncate(long size) {
+        try {
+            segment.truncate(size);
+        } catch (IOException e) {
+            System.err.println("⚠️ Failed to cut a failed batch off the journal: " + e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("⚠️ Failed to close journal segment: " + e.getMessage());
+        }
+    }
+
+    private void writeFrames(List<ByteBuffer> frames) throws IOException {
+        if (frames.isEmpty()) return;
+        ByteBuffer[] buffers = frames.toArray(new ByteBuffer[0]);
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) remaining += buffer.remaining();
+        while (remaining > 0) {
+            remaining -= segment.write(buffers);
+        }
+        frames.clear();
+    }
+
+    private long readSnapshot(File file, Listener listener) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            int magic = in.readInt();
+            if (magic != SNAPSHOT_MAGIC && magic != SNAPSHOT_MAGIC_V1) {
+                throw new IOException("Not a snapshot file: " + file.getAbsolutePath());
+            }
+            long fromSeq = in.readLong();
+            for (int i = in.readInt(); i > 0; i--) listener.onUser(readUser(in));
+            for (int i = in.readInt(); i > 0; i--) listener.onRequest(readRequest(in));
+            for (int i = in.readInt(); i > 0; i--) listener.onDonation(readDonation(in), true);
+            if (magic == SNAPSHOT_MAGIC) {
+                for (int i = in.readInt(); i > 0; i--) listener.onVerified(readString(in));
+            }
+            return fromSeq;
+        }
+    }
+
+    // Replays every intact frame; a torn or corrupt tail from a crash is truncated away
+    private void replaySegment(File file, Listener listener) throws IOException {
+        byte[] data = Files.readAllBytes(file.toPath());
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= 8) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+            crc.reset();
+            crc.update(data, buffer.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                buffer.position(start);
+                break;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, buffer.position(), length));
+            switch (in.readByte()) {
+                case USER: listener.onUser(readUser(in)); break;
+                case REQUEST: listener.onRequest(readRequest(in)); break;
+                case DONATION: listener.onDonation(readDonation(in), false); break;
+                case VERIFIED: listener.onVerified(readString(in)); break;
+                default: throw new IOException("Unknown journal record in " + file.getName());
+            }
+            buffer.position(buffer.position() + length);
+        }
+        if (buffer.position() < data.length) {
+            System.err.println("⚠️ Truncating " + (data.length - buffer.position()) + " unreadable bytes from " + file.getName());
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(buffer.position());
+                channel.force(true);
+            }
+        }
+    }
+
+    private List<Long> segmentSeqs() {
+        List<Long> seqs = new ArrayList<>();
+        String[] names = dir.list();
+        if (names == null) return seqs;
+        for (String name : names) {
+            if (name.startsWith("journal-") && name.endsWith(".log")) {
+                try {
+                    seqs.add(Long.parseLong(name.substring(8, name.length() - 4)));
+                } catch (NumberFormatException e) { /* not ours */ }
+            }
+        }
+        Collections.sort(seqs);
+        return seqs;
+    }
+
+    private File segmentFile(long seq) {
+        return new File(dir, String.format("journal-%010d.log", seq));
+    }
+
+    private FileChannel openSegment(long seq) throws IOException {
+        return FileChannel.open(segmentFile(seq).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static void writeUser(DataOutputStream out, User user) throws IOException {
+        writeString(out, user.getId());
+        writeString(out, user.getName());
+        writeString(out, user.getEmail());
+        writeString(out, user.getBloodType());
+        writeString(out, user.getLocation());
+        out.writeLong(user.getMobile());
+        writeString(out, user.getRole());
+        writeString(out, user.getGender());
+        writeDateTime(out, user.getLastDonatedDateTime());
+    }
+
+    private static User readUser(DataInputStream in) throws IOException {
+        User user = new User(readString(in), readString(in), readString(in), readString(in), readString(in),
+            in.readLong(), readString(in), readString(in));
+        user.setLastDonatedDateTime(readDateTime(in));
+        return user;
+    }
+
+    static void writeRequest(DataOutputStream out, BloodRequest request) throws IOException {
+        BloodRequest.State state = request.getState();
+        writeString(out, request.getId());
+        writeString(out, request.getUserId());
+        writeString(out, request.getBloodType());
+        writeString(out, request.getHospitalArea());
+        out.writeInt(state.unitsNeeded);
+        writeString(out, request.getSeriousness());
+        writeString(out, state.status);
+        writeDateTime(out, request.getCreatedAt());
+    }
+
+    static BloodRequest readRequest(DataInputStream in) throws IOException {
+        return new BloodRequest(readString(in), readString(in), readString(in), readString(in), in.readInt(),
+            readString(in), readString(in), readDateTime(in));
+    }
+
+    static void writeDonation(DataOutputStream out, Donation donation) throws IOException {
+        writeString(out, donation.getId());
+        writeString(out, donation.getDonorId());
+        writeString(out, donation.getRequestId());
+        writeDateTime(out, donation.getDonationDateTime());
+    }
+
+    static Donation readDonation(DataInputStream in) throws IOException {
+        return new Donation(readString(in), readString(in), readString(in), readDateTime(in));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeDateTime(DataOutputStream out, LocalDateTime value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(value.getNano());
+        }
+    }
+
+    private static LocalDateTime readDateTime(DataInputStream in) throws IOException {
+        return in.readBoolean() ? LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC) : null;
+    }
+}
+
+// --- Archive Class ---
+// Append-only cold tier for requests and donations that have left the hot in-memory structures. Records
+// are written through, and read back from, fixed-size memory-mapped regions of one file; only per-user
+// indexes of record offsets stay on the heap. A record never straddles two regions, and a zero length
+// marks the end of the data, so a torn tail after a crash is simply overwritten by the next append.
+class Archive {
+    interface Listener {
+        void onRequest(BloodRequest request);
+        void onDonation(Donation donation);
+    }
+
+    interface Reader<T> {
+        T read(long offset) throws IOException;
+    }
+
+    private static final int DEFAULT_REGION_BYTES = 1 << 24;
+    private static final int SKIP_TO_NEXT_REGION = -1;
+    private static final byte REQUEST = 1, DONATION = 2;
+    private static final String FILE_NAME = "archive.bin";
+
+    private final File dir;
+    private final int regionBytes;
+    private FileChannel channel;
+    private final List<MappedByteBuffer> regions = new CopyOnWriteArrayList<>();
+    // Only the archiving thread appends, always under the snapshot write lock. Each append publishes the
+    // new end last, so a reader that scans up to a previously read end() only meets complete records.
+    private volatile long end;
+
+    // id sequence -> record offset, per receiver, per donor and per request
+    private final ConcurrentHashMap<String, ConcurrentSkipListMap<Long, Long>> requestsByReceiver = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConcurrentSkipListMap<Long, Long>> donationsByDonor = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConcurrentSkipListMap<Long, Long>> donationsByRequest = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> requestOffsets = new ConcurrentHashMap<>();
+    private final LongAdder donationCount = new LongAdder();
+
+    public Archive(File dir) {
+        this(dir, DEFAULT_REGION_BYTES);
+    }
+
+    // Smaller regions let tests cross region boundaries cheaply
+    Archive(File dir, int regionBytes) {
+        this.dir = dir;
+        this.regionBytes = regionBytes;
+    }
+
+    // Maps the existing file and rebuilds the indexes, handing every record to the listener
+    public void open(Listener listener) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create data directory " + dir.getAbsolutePath());
+        }
+        channel = FileChannel.open(new File(dir, FILE_NAME).toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long fileSize = channel.size();
+        scan:
+        for (int index = 0; (long) index * regionBytes < fileSize; index++) {
+            ByteBuffer region = region(index).duplicate();
+            end = (long) index * regionBytes;
+            while (region.remaining() >= 4) {
+                int length = region.getInt(region.position());
+                if (length == SKIP_TO_NEXT_REGION) continue scan;
+                if (length <= 0 || length > region.remaining() - 9) break scan;
+                long offset = end;
+                byte[] payload = new byte[length];
+                region.position(region.position() + 4);
+                byte kind = region.get();
+                region.get(payload);
+                if (region.getInt() != checksum(kind, payload)) break scan;
+                index(kind, payload, offset, listener);
+                end = offset + 9 + length;
+            }
+            break;
+        }
+    }
+
+    public void append(Collection<BloodRequest> requests, Collection<Donation> donations) throws IOException {
+        Set<Integer> touched = new HashSet<>();
+        for (BloodRequest request : requests) {
+            append(REQUEST, encode(out -> Journal.writeRequest(out, request)), request, null, touched);
+        }
+        for (Donation donation : donations) {
+            append(DONATION, encode(out -> Journal.writeDonation(out, donation)), null, donation, touched);
+        }
+        for (int index : touched) regions.get(index).force();
+    }
+
+    public boolean containsRequest(String requestId) {
+        return requestOffsets.containsKey(requestId);
+    }
+
+    // null when the request was never archived
+    public BloodRequest findRequest(String requestId) throws IOException {
+        Long offset = requestOffsets.get(requestId);
+        return offset == null ? null : readRequest(offset);
+    }
+
+    // True when the donation's record lies below a previously read end(), so a scan up to it includes the donation
+    public boolean archivedBefore(Donation donation, long end) {
+        ConcurrentSkipListMap<Long, Long> donorDonations = donationsByDonor.get(donation.getDonorId());
+        Long offset = donorDonations == null ? null : donorDonations.get((long) BloodDonationWebApp.numericSuffix(donation.getId()));
+        return offset != null && offset < end;
+    }
+
+    public long end() {
+        return end;
+    }
+
+    // Archived donations in append order, read lazily from the mapped regions up to a previously read end()
+    public Iterable<Donation> donationsBefore(long end) {
+        return () -> new Iterator<Donation>() {
+            private long offset;
+            private Donation next = advance();
+
+            private Donation advance() {
+                while (offset < end) {
+                    ByteBuffer region = regions.get((int) (offset / regionBytes));
+                    int position = (int) (offset % regionBytes);
+                    int length = region.getInt(position);
+                    if (length == SKIP_TO_NEXT_REGION) {
+                        offset = (offset / regionBytes + 1) * regionBytes;
+                        continue;
+                    }
+                    long record = offset;
+                    offset += 9 + length;
+                    if (region.get(position + 4) == DONATION) {
+                        try {
+                            return readDonation(record);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Donation next() {
+                if (next == null) throw new java.util.NoSuchElementException();
+                Donation donation = next;
+                next = advance();
+                return donation;
+            }
+        };
+    }
+
+    public boolean containsDonation(Donation donation) {
+        ConcurrentSkipListMap<Long, Long> donorDonations = donationsByDonor.get(donation.getDonorId());
+        return donorDonations != null && donorDonations.containsKey((long) BloodDonationWebApp.numericSuffix(donation.getId()));
+    }
+
+    public NavigableMap<Long, Long> requestsFor(String receiverId) {
+        return indexOf(requestsByReceiver, receiverId);
+    }
+
+    public NavigableMap<Long, Long> donationsForDonor(String donorId) {
+        return indexOf(donationsByDonor, donorId);
+    }
+
+    public NavigableMap<Long, Long> donationsForRequest(String requestId) {
+        return indexOf(donationsByRequest, requestId);
+    }
+
+    public int requestCount() {
+        return requestOffsets.size();
+    }
+
+    public long donationCount() {
+        return donationCount.sum();
+    }
+
+    public BloodRequest readRequest(long offset) throws IOException {
+        return Journal.readRequest(record(offset));
+    }
+
+    public Donation readDonation(long offset) throws IOException {
+        return Journal.readDonation(record(offset));
+    }
+
+    // Merges a hot and an archived tier, both already narrowed to the page's range and keyed by id sequence,
+    // into one page in ascending or descending order. An item caught mid-move sits in both and is returned once.
+    static <T> FilterIndex.Page<T> mergePage(NavigableMap<Long, T> hot, NavigableMap<Long, Long> archived,
+                                             Reader<T> reader, boolean newestFirst, int limit) throws IOException {
+        Iterator<Map.Entry<Long, T>> hotEntries = (newestFirst ? hot.descendingMap() : hot).entrySet().iterator();
+        Iterator<Map.Entry<Long, Long>> archivedEntries = (newestFirst ? archived.descendingMap() : archived).entrySet().iterator();
+        Map.Entry<Long, T> nextHot = hotEntries.hasNext() ? hotEntries.next() : null;
+        Map.Entry<Long, Long> nextArchived = archivedEntries.hasNext() ? archivedEntries.next() : null;
+
+        List<T> items = new ArrayList<>(Math.min(limit, 256));
+        Long last = null;
+        while (nextHot != null || nextArchived != null) {
+            if (items.size() == limit) return new FilterIndex.Page<>(items, last);
+            int order = nextHot == null ? 1 : nextArchived == null ? -1
+                : Long.compare(nextHot.getKey(), nextArchived.getKey()) * (newestFirst ? -1 : 1);
+            if (order <= 0) {
+                if (order == 0) nextArchived = archivedEntries.hasNext() ? archivedEntries.next() : null;
+                items.add(nextHot.getValue());
+                last = nextHot.getKey();
+                nextHot = hotEntries.hasNext() ? hotEntries.next() : null;
+            } else {
+                items.add(reader.read(nextArchived.getValue()));
+                last = nextArchived.getKey();
+                nextArchived = archivedEntries.hasNext() ? archivedEntries.next() : null;
+            }
+        }
+        return new FilterIndex.Page<>(items, null);
+    }
+
+    // Adds every region it writes to touched: the skip marker left in a full region must reach the disk
+    // too, or a reopen would stop at that region's stale end marker and miss everything after it
+    private void append(byte kind, byte[] payload, BloodRequest request, Donation donation, Set<Integer> touched) throws IOException {
+        int recordBytes = 9 + payload.length;
+        if (recordBytes + 4 > regionBytes) throw new IOException("Archive record too large: " + payload.length + " bytes");
+        long offset = end;
+        int index = (int) (offset / regionBytes);
+        int position = (int) (offset % regionBytes);
+        if (position + recordBytes + 4 > regionBytes) {
+            // Keep a 4-byte end marker after every record within its region
+            region(index).putInt(position, SKIP_TO_NEXT_REGION);
+            touched.add(index);
+            index++;
+            position = 0;
+            offset = (long) index * regionBytes;
+        }
+        ByteBuffer region = region(index).duplicate();
+        region.position(position);
+        region.putInt(payload.length).put(kind).put(payload).putInt(checksum(kind, payload));
+        region.putInt(0);
+
+        if (request != null) indexRequest(request, offset);
+        if (donation != null) indexDonation(donation, offset);
+        end = offset + recordBytes;
+        touched.add(index);
+    }
+
+    private void index(byte kind, byte[] payload, long offset, Listener listener) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        if (kind == REQUEST) {
+            BloodRequest request = Journal.readRequest(in);
+            indexRequest(request, offset);
+            listener.onRequest(request);
+        } else if (kind == DONATION) {
+            Donation donation = Journal.readDonation(in);
+            indexDonation(donation, offset);
+            listener.onDonation(donation);
+        }
+    }
+
+    private void indexRequest(BloodRequest request, long offset) {
+        long seq = BloodDonationWebApp.numericSuffix(request.getId());
+        requestsByReceiver.computeIfAbsent(request.getUserId(), k -> new ConcurrentSkipListMap<>()).put(seq, offset);
+        requestOffsets.put(request.getId(), offset);
+    }
+
+    private void indexDonation(Donation donation, long offset) {
+        long seq = BloodDonationWebApp.numericSuffix(donation.getId());
+        donationsByDonor.computeIfAbsent(donation.getDonorId(), k -> new ConcurrentSkipListMap<>()).put(seq, offset);
+        donationsByRequest.computeIfAbsent(donation.getRequestId(), k -> new ConcurrentSkipListMap<>()).put(seq, offset);
+        donationCount.increment();
+    }
+
+    private static NavigableMap<Long, Long> indexOf(ConcurrentHashMap<String, ConcurrentSkipListMap<Long, Long>> index, String key) {
+        ConcurrentSkipListMap<Long, Long> offsets = index.get(key);
+        return offsets == null ? Collections.emptyNavigableMap() : offsets;
+    }
+
+    private DataInputStream record(long offset) {
+        ByteBuffer region = regions.get((int) (offset / regionBytes)).duplicate();
+        region.position((int) (offset % regionBytes));
+        byte[] payload = new byte[region.getInt()];
+        region.get(); // kind
+        region.get(payload);
+        return new DataInputStream(new ByteArrayInputStream(payload));
+    }
+
+    // Regions are mapped read-write in full, which grows the file a region at a time
+    private MappedByteBuffer region(int index) throws IOException {
+        while (regions.size() <= index) {
+            regions.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) regions.size() * regionBytes, regionBytes));
+        }
+        return regions.get(index);
+    }
+
+    private static byte[] encode(Journal.FieldWriter encoder) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            encoder.write(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static int checksum(byte kind, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(kind);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
+
+// --- JsonWriter Class ---
+// Minimal streaming JSON writer: encodes UTF-8 straight into a pooled buffer that is
+// flushed to the underlying stream, escaping strings as it goes. Not thread-safe.
+class JsonWriter implements Closeable {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_POOLED_BUFFERS = 64;
+    private static final ConcurrentLinkedQueue<byte[]> BUFFER_POOL = new ConcurrentLinkedQueue<>();
+    private static final byte[] HEX = "0123456789abcdef".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+
+    private final OutputStream out;
+    private byte[] buffer;
+    private int position;
+    private boolean needsComma;
+    private boolean afterName;
+
+    public JsonWriter(OutputStream out) {
+        this.out = out;
+        byte[] pooled = BUFFER_POOL.poll();
+        this.buffer = pooled != null ? pooled : new byte[BUFFER_SIZE];
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        separate();
+        writeByte('{');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+        writeByte('}');
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        separate();
+        writeByte('[');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+        writeByte(']');
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter name(String name) throws IOException {
+        separate();
+        writeString(name);
+        writeByte(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        separate();
+        if (value == null) {
+            writeAscii("null");
+        } else {
+            writeString(value);
+        }
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        separate();
+        writeAscii(Long.toString(value));
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(double value) throws IOException {
+        separate();
+        writeAscii(Double.isFinite(value) ? Double.toString(value) : "null");
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        separate();
+        writeAscii(value ? "true" : "false");
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter field(String name, String value) throws IOException {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(String name, long value) throws IOException {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(String name, boolean value) throws IOException {
+        return name(name).value(value);
+    }
+
+    public void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.write(buffer, 0, position);
+            out.close();
+        } finally {
+            position = 0;
+            if (BUFFER_POOL.size() < MAX_POOLED_BUFFERS) BUFFER_POOL.offer(buffer);
+            buffer = null;
+        }
+    }
+
+    // Ends a top-level value with a newline instead of a comma, for NDJSON
+    public JsonWriter lineBreak() throws IOException {
+        writeByte('\n');
+        needsComma = false;
+        return this;
+    }
+
+    private void separate() throws IOException {
+        if (afterName) {
+            afterName = false;
+        } else if (needsComma) {
+            writeByte(',');
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        writeByte('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (position + 6 > buffer.length) drain();
+            if (c == '"' || c == '\\') {
+                buffer[position++] = '\\';
+                buffer[position++] = (byte) c;
+            } else if (c < 0x20) {
+                switch (c) {
+                    case '\n': buffer[position++] = '\\'; buffer[position++] = 'n'; break;
+                    case '\r': buffer[position++] = '\\'; buffer[position++] = 'r'; break;
+                    case '\t': buffer[position++] = '\\'; buffer[position++] = 't'; break;
+                    default:
+                        buffer[position++] = '\\';
+                        buffer[position++] = 'u';
+                        buffer[position++] = '0';
+                        buffer[position++] = '0';
+                        buffer[position++] = HEX[c >> 4];
+                        buffer[position++] = HEX[c & 0xF];
+                }
+            } else if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer[position++] = '?'; // unpaired surrogate has no UTF-8 encoding
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeAscii(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            writeByte(value.charAt(i));
+        }
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (position == buffer.length) drain();
+        buffer[position++] = (byte) b;
+    }
+
+    private void drain() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+}
+
+// --- FormParams Class ---
+// Single-pass parser for application/x-www-form-urlencoded bodies and query strings.
+// Percent-escapes are decoded in place in the raw bytes and only the offsets of each
+// key and value are recorded; Strings are created only for values a handler asks for.
+class FormParams {
+    // Thrown when a body exceeds the configured limit; handlers answer 413
+    static class TooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        TooLargeException(int limit) {
+            super("Request body exceeds " + limit + " bytes");
+        }
+    }
+
+    private static final FormParams EMPTY = new FormParams(new byte[0], 0);
+
+    private final byte[] data;
+    private int[] bounds = new int[16]; // keyStart, keyEnd, valueStart, valueEnd per pair
+    private int count;
+
+    private FormParams(byte[] data, int length) {
+        this.data = data;
+        parse(length);
+    }
+
+    public static FormParams ofBody(InputStream body, int maxBytes) throws IOException {
+        byte[] buffer = new byte[Math.min(maxBytes + 1, 1024)];
+        int length = 0;
+        int read;
+        while ((read = body.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+            if (length > maxBytes) throw new TooLargeException(maxBytes);
+            if (length == buffer.length) buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, maxBytes + 1));
+        }
+        return new FormParams(buffer, length);
+    }
+
+    public static FormParams ofQuery(URI uri) {
+        String query = uri.getRawQuery();
+        if (query == null || query.isEmpty()) return EMPTY;
+        byte[] bytes = query.getBytes(java.nio.charset.StandardCharsets.ISO_8859_1);
+        return new FormParams(bytes, bytes.length);
+    }
+
+    public boolean has(String name) {
+        return find(name) >= 0;
+    }
+
+    public String get(String name, String defaultValue) {
+        int i = find(name);
+        return i < 0 ? defaultValue : new String(data, bounds[i + 2], bounds[i + 3] - bounds[i + 2], java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+    public String get(String name) {
+        return get(name, null);
+    }
+
+    // Parses digits straight from the bytes; defaultValue if absent, malformed or out of range
+    public long getLong(String name, long defaultValue) {
+        int i = find(name);
+        if (i < 0) return defaultValue;
+        int start = bounds[i + 2], end = bounds[i + 3];
+        boolean negative = start < end && data[start] == '-';
+        if (negative) start++;
+        if (start == end || end - start > 18) return defaultValue;
+        long value = 0;
+        for (int p = start; p < end; p++) {
+            int digit = data[p] - '0';
+            if (digit < 0 || digit > 9) return defaultValue;
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    public int getInt(String name, int defaultValue) {
+        long value = getLong(name, Long.MIN_VALUE);
+        return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? defaultValue : (int) value;
+    }
+
+    // Matches a constant name ignoring case and surrounding spaces; null if absent or unknown
+    public <E extends Enum<E>> E getEnum(String name, Class<E> type) {
+        int i = find(name);
+        if (i < 0) return null;
+        int start = bounds[i + 2], end = bounds[i + 3];
+        while (start < end && data[start] == ' ') start++;
+        while (end > start && data[end - 1] == ' ') end--;
+        for (E constant : type.getEnumConstants()) {
+            if (equalsIgnoreCase(constant.name(), start, end)) return constant;
+        }
+        return null;
+    }
+
+    // Last occurrence wins, matching the old split-and-switch parsing
+    private int find(String name) {
+        for (int i = (count - 1) * 4; i >= 0; i -= 4) {
+            int start = bounds[i], end = bounds[i + 1];
+            if (end - start != name.length()) continue;
+            boolean match = true;
+            for (int p = 0; p < name.length() && match; p++) {
+                match = data[start + p] == name.charAt(p);
+            }
+            if (match) return i;
+        }
+        return -1;
+    }
+
+    private boolean equalsIgnoreCase(String constant, int start, int end) {
+        if (end - start != constant.length()) return false;
+        for (int p = 0; p < constant.length(); p++) {
+            int b = data[start + p];
+            if (b >= 'a' && b <= 'z') b -= 32;
+            if (b != constant.charAt(p)) return false;
+        }
+        return true;
+    }
+
+    private void parse(int length) {
+        int read = 0;
+        while (read < length) {
+            int keyStart = read, write = read;
+            int keyEnd = -1, valueStart = -1;
+            while (read < length && data[read] != '&') {
+                byte b = data[read];
+                if (b == '=' && keyEnd < 0) {
+                    keyEnd = write;
+                    read++;
+                    // Values are decoded right after the '=' so they stay contiguous
+                    valueStart = read;
+                    write = read;
+                    continue;
+                }
+                if (b == '+') {
+                    data[write++] = ' ';
+                    read++;
+                } else if (b == '%' && read + 2 < length && hex(data[read + 1]) >= 0 && hex(data[read + 2]) >= 0) {
+                    data[write++] = (byte) ((hex(data[read + 1]) << 4) | hex(data[read + 2]));
+                    read += 3;
+                } else {
+                    data[write++] = b;
+                    read++;
+                }
+            }
+            if (keyEnd >= 0 && write > valueStart) {
+                if ((count + 1) * 4 > bounds.length) bounds = Arrays.copyOf(bounds, bounds.length * 2);
+                bounds[count * 4] = keyStart;
+                bounds[count * 4 + 1] = keyEnd;
+                bounds[count * 4 + 2] = valueStart;
+                bounds[count * 4 + 3] = write;
+                count++;
+            }
+            read++; // skip '&'
+        }
+    }
+
+    private static int hex(byte b) {
+        if (b >= '0' && b <= '9') return b - '0';
+        if (b >= 'a' && b <= 'f') return b - 'a' + 10;
+        if (b >= 'A' && b <= 'F') return b - 'A' + 10;
+        return -1;
+    }
+}
+
+// --- RowReader Class ---
+// Streams records out of a CSV (header row first) or NDJSON body one line at a time, so bulk uploads are
+// never held in memory as a whole. Each row is a flat field-name -> text map; unknown fields are kept
+// and left for the caller to ignore.
+class RowReader implements Closeable {
+    public static final int MAX_LINE_CHARS = 8192;
+
+    enum Format { CSV, NDJSON }
+
+    static class MalformedRowException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        MalformedRowException(String message) {
+            super(message);
+        }
+    }
+
+    private final Reader in;
+    private final Format format;
+    private final char[] buffer = new char[1 << 16];
+    private final StringBuilder line = new StringBuilder(256);
+    private int position;
+    private int limit;
+    private boolean lineTooLong;
+    private String[] header;
+    private int lineNumber;
+
+    public RowReader(InputStream body, Format format) {
+        this.in = new InputStreamReader(body, java.nio.charset.StandardCharsets.UTF_8);
+        this.format = format;
+    }
+
+    // "csv" / "ndjson" from the format parameter, else guessed from the Content-Type; null when unsupported
+    public static Format formatOf(String parameter, String contentType) {
+        String value = parameter != null ? parameter : contentType == null ? "text/csv" : contentType;
+        value = value.toLowerCase(Locale.ROOT);
+        if (value.contains("ndjson") || value.contains("json")) return Format.NDJSON;
+        if (value.contains("csv") || value.startsWith("text/plain")) return Format.CSV;
+        return null;
+    }
+
+    public int lineNumber() {
+        return lineNumber;
+    }
+
+    // The next non-blank row, or null at end of input; a bad row throws but leaves the reader usable
+    public Map<String, String> next() throws IOException, MalformedRowException {
+        while (readLine()) {
+            if (lineTooLong) throw new MalformedRowException("Line longer than " + MAX_LINE_CHARS + " characters");
+            if (line.length() == 0 || isBlank(line)) continue;
+            if (format == Format.NDJSON) return parseJsonObject(line);
+
+            List<String> fields = parseCsvLine(line);
+            if (header == null) {
+                header = new String[fields.size()];
+                for (int i = 0; i < header.length; i++) header[i] = fields.get(i).trim();
+                continue;
+            }
+            Map<String, String> row = new HashMap<>();
+            for (int i = 0; i < header.length && i < fields.size(); i++) {
+                row.put(header[i], fields.get(i));
+            }
+            return row;
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // Reads up to the next '\n' (dropping a trailing '\r'); characters past MAX_LINE_CHARS are discarded
+    private boolean readLine() throws IOException {
+        line.setLength(0);
+        lineTooLong = false;
+        boolean readAny = false;
+        while (true) {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    if (readAny) lineNumber++;
+                    return readAny;
+                }
+            }
+            readAny = true;
+            int start = position;
+            while (position < limit && buffer[position] != '\n') position++;
+            append(start, position);
+            if (position < limit) {
+                position++; // the '\n'
+                lineNumber++;
+                int end = line.length();
+                if (end > 0 && line.charAt(end - 1) == '\r') line.setLength(end - 1);
+                return true;
+            }
+        }
+    }
+
+    private void append(int start, int end) {
+        int room = MAX_LINE_CHARS - line.length();
+        if (end - start > room) {
+            lineTooLong = true;
+            end = start + Math.max(room, 0);
+        }
+        line.append(buffer, start, end - start);
+    }
+
+    private static boolean isBlank(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isWhitespace(text.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    // RFC 4180 fields within one line: commas separate, double quotes wrap, "" escapes a quote
+    static List<String> parseCsvLine(CharSequence text) throws MalformedRowException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) throw new MalformedRowException("Unterminated quoted field");
+        fields.add(field.toString());
+        return fields;
+    }
+
+    // A flat JSON object whose values are strings, numbers, booleans or null
+    static Map<String, String> parseJsonObject(CharSequence text) throws MalformedRowException {
+        Map<String, String> row = new HashMap<>();
+        int[] at = { skipSpaces(text, 0) };
+        expect(text, at, '{');
+        if (peek(text, at) == '}') {
+            at[0]++;
+        } else {
+            while (true) {
+                String name = readJsonString(text, at);
+                expect(text, at, ':');
+                char c = peek(text, at);
+                if (c == '"') {
+                    row.put(name, readJsonString(text, at));
+                } else {
+                    int start = at[0];
+                    while (at[0] < text.length() && ",} \t".indexOf(text.charAt(at[0])) < 0) at[0]++;
+                    String literal = text.subSequence(start, at[0]).toString();
+                    if (literal.isEmpty() || c == '{' || c == '[') throw new MalformedRowException("Only flat objects are supported");
+                    if (!literal.equals("null")) row.put(name, literal);
+                }
+                if (peek(text, at) == ',') {
+                    at[0]++;
+                    continue;
+                }
+                expect(text, at, '}');
+                break;
+            }
+        }
+        if (skipSpaces(text, at[0]) != text.length()) throw new MalformedRowException("Trailing characters after object");
+        return row;
+    }
+
+    private static String readJsonString(CharSequence text, int[] at) throws MalformedRowException {
+        expect(text, at, '"');
+        StringBuilder value = new StringBuilder();
+        while (at[0] < text.length()) {
+            char c = text.charAt(at[0]++);
+            if (c == '"') return value.toString();
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (at[0] >= text.length()) break;
+            char escape = text.charAt(at[0]++);
+            switch (escape) {
+                case 'n': value.append('\n'); break;
+                case 't': value.append('\t'); break;
+                case 'r': value.append('\r'); break;
+                case 'b': value.append('\b'); break;
+                case 'f': value.append('\f'); break;
+                case 'u':
+                    if (at[0] + 4 > text.length()) throw new MalformedRowException("Bad unicode escape");
+                    try {
+                        value.append((char) Integer.parseInt(text.subSequence(at[0], at[0] + 4).toString(), 16));
+                    } catch (NumberFormatException e) {
+                        throw new MalformedRowException("Bad unicode escape");
+                    }
+                    at[0] += 4;
+                    break;
+                default: value.append(escape);
+            }
+        }
+        throw new MalformedRowException("Unterminated string");
+    }
+
+    private static char peek(CharSequence text, int[] at) throws MalformedRowException {
+        at[0] = skipSpaces(text, at[0]);
+        if (at[0] >= text.length()) throw new MalformedRowException("Unexpected end of line");
+        return text.charAt(at[0]);
+    }
+
+    private static void expect(CharSequence text, int[] at, char expected) throws MalformedRowException {
+        if (peek(text, at) != expected) throw new MalformedRowException("Expected '" + expected + "' at column " + (at[0] + 1));
+        at[0]++;
+    }
+
+    private static int skipSpaces(CharSequence text, int i) {
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) i++;
+        return i;
+    }
+}
+
+// --- StaticAssetCache Class ---
+// Front-end files held in memory with a precomputed gzip variant and strong ETags, so serving
+// them does no disk I/O. Only files with a known web extension directly inside the base
+// directory are served; nothing else on disk is reachable through the static handler.
+class StaticAssetCache {
+    static class Asset {
+        final String contentType;
+        final byte[] body;
+        final byte[] gzipBody; // null when compression does not pay off
+        final String etag;
+        final String gzipEtag;
+
+        Asset(String contentType, byte[] body, byte[] gzipBody, String etag) {
+            this.contentType = contentType;
+            this.body = body;
+            this.gzipBody = gzipBody;
+            this.etag = "\"" + etag + "\"";
+            this.gzipEtag = "\"" + etag + "-gz\"";
+        }
+    }
+
+    private final File baseDir;
+    private final ConcurrentHashMap<String, Asset> assets = new ConcurrentHashMap<>();
+
+    public StaticAssetCache(File baseDir) {
+        this.baseDir = baseDir;
+    }
+
+    public void loadAll() throws IOException {
+        File[] files = baseDir.listFiles();
+        if (files == null) throw new IOException("Cannot list static directory " + baseDir.getAbsolutePath());
+        for (File file : files) {
+            reload(file.getName());
+        }
+    }
+
+    // Re-reads one file by name, dropping it from the cache if it is gone or not servable
+    public void reload(String name) throws IOException {
+        File file = new File(baseDir, name);
+        String contentType = contentType(name);
+        if (contentType == null || !file.isFile()) {
+            assets.remove(name);
+            return;
+        }
+        byte[] body = Files.readAllBytes(file.toPath());
+        byte[] gzipBody = null;
+        if (contentType.startsWith("text/") || contentType.startsWith("application/javascript") || contentType.startsWith("image/svg")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 2 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(body);
+            }
+            if (compressed.size() < body.length) gzipBody = compressed.toByteArray();
+        }
+        assets.put(name, new Asset(contentType, body, gzipBody, digest(body)));
+    }
+
+    // path is the raw request path, e.g. "/script.js"; anything outside the cache yields null
+    public Asset get(String path) {
+        if (path == null || !path.startsWith("/")) return null;
+        String name = path.equals("/") ? "index.html" : path.substring(1);
+        return assets.get(name);
+    }
+
+    // Reloads files as they change on disk, on a daemon thread
+    public void watch() throws IOException {
+        WatchService watcher = FileSystems.getDefault().newWatchService();
+        baseDir.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        Thread thread = new Thread(() -> {
+            while (true) {
+                WatchKey key;
+                try {
+                    key = watcher.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.context() instanceof Path) {
+                        String name = ((Path) event.context()).getFileName().toString();
+                        try {
+                            reload(name);
+                        } catch (IOException e) {
+                            System.err.println("⚠️ Failed to reload " + name + ": " + e.getMessage());
+                        }
+                    }
+                }
+                key.reset();
+            }
+        }, "static-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    static String contentType(String name) {
+        if (name.endsWith(".html")) return "text/html; charset=utf-8";
+        if (name.endsWith(".css")) return "text/css; charset=utf-8";
+        if (name.endsWith(".js")) return "application/javascript; charset=utf-8";
+        if (name.endsWith(".svg")) return "image/svg+xml";
+        if (name.endsWith(".png")) return "image/png";
+        if (name.endsWith(".jpg") || name.endsWith(".jpeg")) return "image/jpeg";
+        if (name.endsWith(".ico")) return "image/x-icon";
+        return null;
+    }
+
+    static String digest(byte[] body) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(body);
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
+
+// --- Metrics Class ---
+// Request counters, latency histograms and gauges, exposed in the Prometheus text format.
+// Everything on the request path is a LongAdder, so concurrent handlers update separate cells
+// instead of contending on one counter.
+class Metrics {
+    // Latency buckets in microseconds: two per power of two (16, 24, 32, 48, 64, ...) up to 2^27 (~134 s),
+    // i.e. an HDR-style log-linear layout with one sub-bucket bit. The last slot is +Inf.
+    private static final int MIN_SHIFT = 4;
+    private static final int MAX_SHIFT = 27;
+    private static final int BUCKETS = 2 * (MAX_SHIFT - MIN_SHIFT) + 1;
+    private static final String[] BUCKET_LABELS = new String[BUCKETS];
+    private static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx", "none"};
+
+    static {
+        for (int i = 0; i < BUCKETS; i++) {
+            long edge = (1L << (MIN_SHIFT + i / 2)) * ((i & 1) == 0 ? 2 : 3) / 2;
+            BUCKET_LABELS[i] = java.math.BigDecimal.valueOf(edge).movePointLeft(6).stripTrailingZeros().toPlainString();
+        }
+    }
+
+    private static class Gauge {
+        final String help;
+        final LongSupplier reader;
+
+        Gauge(String help, LongSupplier reader) {
+            this.help = help;
+            this.reader = reader;
+        }
+    }
+
+    static class ContextMetrics {
+        private final String context;
+        private final LongAdder[] responses = new LongAdder[STATUS_CLASSES.length];
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder[] latency = new LongAdder[BUCKETS + 1];
+        private final LongAdder latencySumNanos = new LongAdder();
+
+        ContextMetrics(String context) {
+            this.context = context;
+            for (int i = 0; i < responses.length; i++) responses[i] = new LongAdder();
+            for (int i = 0; i < latency.length; i++) latency[i] = new LongAdder();
+        }
+
+        // statusCode is -1 when the handler never sent a response; failed is true when it threw
+        public void record(int statusCode, boolean failed, long elapsedNanos) {
+            int statusClass = statusCode >= 100 && statusCode < 600 ? statusCode / 100 - 1 : STATUS_CLASSES.length - 1;
+            responses[statusClass].increment();
+            if (failed || statusCode >= 500) errors.increment();
+            latency[bucket(elapsedNanos / 1000)].increment();
+            latencySumNanos.add(elapsedNanos);
+        }
+    }
+
+    private final Map<String, ContextMetrics> contexts = new ConcurrentHashMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+    public ContextMetrics context(String path) {
+        return contexts.computeIfAbsent(path, ContextMetrics::new);
+    }
+
+    public void gauge(String name, String help, LongSupplier reader) {
+        gauges.put(name, new Gauge(help, reader));
+    }
+
+    // Index of the first bucket whose upper edge is above the value
+    static int bucket(long micros) {
+        if (micros < 1L << MIN_SHIFT) return 0;
+        int shift = 63 - Long.numberOfLeadingZeros(micros);
+        if (shift >= MAX_SHIFT) return BUCKETS;
+        int half = (int) (micros >>> (shift - 1)) & 1;
+        return 2 * (shift - MIN_SHIFT) + 1 + half;
+    }
+
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(16 * 1024);
+        List<ContextMetrics> sorted = new ArrayList<>(contexts.values());
+        sorted.sort((a, b) -> a.context.compareTo(b.context));
+
+        out.append("# HELP saviour_http_requests_total Requests handled, by context and response status class\n");
+        out.append("# TYPE saviour_http_requests_total counter\n");
+        for (ContextMetrics metrics : sorted) {
+            for (int i = 0; i < STATUS_CLASSES.length; i++) {
+                long count = metrics.responses[i].sum();
+                if (count == 0) continue;
+                out.append("saviour_http_requests_total{context=\"").append(metrics.context)
+                    .append("\",status=\"").append(STATUS_CLASSES[i]).append("\"} ").append(count).append('\n');
+            }
+        }
+
+        out.append("# HELP saviour_http_errors_total Requests that failed with a 5xx status or an exception\n");
+        out.append("# TYPE saviour_http_errors_total counter\n");
+        for (ContextMetrics metrics : sorted) {
+            out.append("saviour_http_errors_total{context=\"").append(metrics.context).append("\"} ")
+                .append(metrics.errors.sum()).append('\n');
+        }
+
+        out.append("# HELP saviour_http_request_duration_seconds Time from request dispatch to the handler returning\n");
+        out.append("# TYPE saviour_http_request_duration_seconds histogram\n");
+        for (ContextMetrics metrics : sorted) {
+            long cumulative = 0;
+            for (int i = 0; i <= BUCKETS; i++) {
+                cumulative += metrics.latency[i].sum();
+                out.append("saviour_http_request_duration_seconds_bucket{context=\"").append(metrics.context)
+                    .append("\",le=\"").append(i < BUCKETS ? BUCKET_LABELS[i] : "+Inf").append("\"} ")
+                    .append(cumulative).append('\n');
+            }
+            out.append("saviour_http_request_duration_seconds_sum{context=\"").append(metrics.context).append("\"} ")
+                .append(metrics.latencySumNanos.sum() / 1e9).append('\n');
+            out.append("saviour_http_request_duration_seconds_count{context=\"").append(metrics.context).append("\"} ")
+                .append(cumulative).append('\n');
+        }
+
+        for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+            String name = gauge.getKey();
+            out.append("# HELP ").append(name).append(' ').append(gauge.getValue().help).append('\n');
+            out.append("# TYPE ").append(name).append(" gauge\n");
+            out.append(name).append(' ').append(gauge.getValue().reader.getAsLong()).append('\n');
+        }
+        return out.toString();
+    }
+}
+
+// --- RequestStream Class ---
+// Server-Sent Events fan-out of blood requests to donors. Subscribers are grouped into one topic per
+// donor blood type, and an event for a recipient type goes only to the topics that can donate to it.
+// A subscribed exchange holds no thread: its handler returns right after the headers are sent, and
+// queued events are written by a small shared writer pool. Socket writes block, so a client that stops
+// reading would hold a writer indefinitely; a write that outlives the deadline is interrupted instead,
+// which closes the connection and frees the writer for everyone else.
+class RequestStream {
+    // A subscriber with more undelivered events than this is too slow and gets disconnected
+    private static final int MAX_PENDING_EVENTS = 256;
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+    private static final byte[] PREAMBLE = "retry: 5000\n: connected\n\n".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+
+    private final Map<BloodType, Set<Subscriber>> topics = new EnumMap<>(BloodType.class);
+    // Every subscriber whose exchange is not closed yet, including ones already dropped from their topic
+    private final Set<Subscriber> connected = ConcurrentHashMap.newKeySet();
+    private final ExecutorService writers;
+    private final long writeTimeoutNanos;
+
+    public RequestStream(int writerThreads, long writeTimeoutMillis) {
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+        for (BloodType bloodType : BloodType.values()) {
+            topics.put(bloodType, ConcurrentHashMap.newKeySet());
+        }
+        writers = Executors.newFixedThreadPool(writerThreads, r -> {
+            Thread thread = new Thread(r, "sse-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    interface SocketWrite {
+        void run() throws IOException;
+    }
+
+    private class Subscriber {
+        final BloodType bloodType;
+        final HttpExchange exchange;
+        final OutputStream out;
+        final ConcurrentLinkedQueue<byte[]> pending = new ConcurrentLinkedQueue<>();
+        final AtomicInteger pendingCount = new AtomicInteger();
+        // At most one writer task per subscriber, so its events stay in order and writes never interleave
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        final AtomicBoolean closed = new AtomicBoolean();
+        // The writer thread inside a blocking write, and since when; guarded by this subscriber's monitor
+        private Thread writingThread;
+        private long writeStartedNanos;
+
+        Subscriber(BloodType bloodType, HttpExchange exchange) {
+            this.bloodType = bloodType;
+            this.exchange = exchange;
+            this.out = exchange.getResponseBody();
+        }
+
+        void enqueue(byte[] event) {
+            if (closed.get()) return;
+            if (pendingCount.incrementAndGet() > MAX_PENDING_EVENTS) {
+                close();
+                return;
+            }
+            pending.add(event);
+            if (scheduled.compareAndSet(false, true)) {
+                writers.execute(this::drain);
+            }
+        }
+
+        // Runs on a writer thread, which holds the scheduled flag until it returns or closes the exchange
+        private void drain() {
+            try {
+                while (true) {
+                    byte[] event;
+                    while (!closed.get() && (event = pending.poll()) != null) {
+                        pendingCount.decrementAndGet();
+                        byte[] next = event;
+                        timed(() -> out.write(next));
+                    }
+                    if (closed.get()) break;
+                    timed(out::flush);
+                    scheduled.set(false);
+                    // An event or close() that arrived after the last poll but before the flag was cleared still needs a writer
+                    if ((pending.isEmpty() && !closed.get()) || !scheduled.compareAndSet(false, true)) return;
+                }
+            } catch (IOException e) {
+                if (closed.compareAndSet(false, true)) topics.get(bloodType).remove(this);
+            }
+            Thread.interrupted(); // a deadline interrupt has done its job; don't leak it into the next task
+            try {
+                timed(exchange::close);
+            } catch (IOException e) {
+                // the exchange closes its connection itself when the final chunk cannot be written
+            }
+            Thread.interrupted();
+            connected.remove(this);
+        }
+
+        // Runs one blocking write, flush or close under the write deadline
+        private void timed(SocketWrite write) throws IOException {
+            synchronized (this) {
+                writingThread = Thread.currentThread();
+                writeStartedNanos = System.nanoTime();
+            }
+            try {
+                write.run();
+            } finally {
+                synchronized (this) {
+                    writingThread = null;
+                }
+            }
+        }
+
+        // Interrupting a blocked socket write closes the channel and makes the write throw
+        synchronized boolean interruptIfStalled(long now) {
+            if (writingThread == null || now - writeStartedNanos < writeTimeoutNanos) return false;
+            if (closed.compareAndSet(false, true)) topics.get(bloodType).remove(this);
+            writingThread.interrupt();
+            return true;
+        }
+
+        // Only marks the subscriber closed: closing the exchange writes the final chunk, which can block on
+        // a client that stopped reading, so that is left to a writer
+        void close() {
+            if (!closed.compareAndSet(false, true)) return;
+            topics.get(bloodType).remove(this);
+            if (scheduled.compareAndSet(false, true)) {
+                writers.execute(this::drain);
+            }
+        }
+    }
+
+    // Sends the event-stream headers and keeps the exchange open; the caller's thread returns immediately
+    public void subscribe(HttpExchange exchange, BloodType donorType) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        Subscriber subscriber = new Subscriber(donorType, exchange);
+        connected.add(subscriber);
+        topics.get(donorType).add(subscriber);
+        subscriber.enqueue(PREAMBLE);
+    }
+
+    // Delivers the event to every subscriber whose blood type can donate to the recipient
+    public void publish(BloodType recipient, byte[] event) {
+        for (BloodType donorType : BloodType.donorsFor(recipient)) {
+            for (Subscriber subscriber : topics.get(donorType)) {
+                subscriber.enqueue(event);
+            }
+        }
+    }
+
+    // Keeps proxies from timing out idle streams and weeds out clients that went away
+    public void heartbeat() {
+        for (Set<Subscriber> topic : topics.values()) {
+            for (Subscriber subscriber : topic) {
+                subscriber.enqueue(HEARTBEAT);
+            }
+        }
+    }
+
+    // Drops subscribers whose current write has outlived the deadline, returning how many
+    public int dropStalled() {
+        long now = System.nanoTime();
+        int dropped = 0;
+        for (Subscriber subscriber : connected) {
+            if (subscriber.interruptIfStalled(now)) dropped++;
+        }
+        if (dropped > 0) System.err.println("⚠️ Dropped " + dropped + " stalled request stream(s)");
+        return dropped;
+    }
+
+    public int subscriberCount() {
+        int count = 0;
+        for (Set<Subscriber> topic : topics.values()) count += topic.size();
+        return count;
+    }
+
+    public static byte[] event(String name, String id, byte[] json) {
+        byte[] head = ("event: " + name + "\nid: " + id + "\ndata: ").getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        byte[] event = Arrays.copyOf(head, head.length + json.length + 2);
+        System.arraycopy(json, 0, event, head.length, json.length);
+        event[event.length - 2] = '\n';
+        event[event.length - 1] = '\n';
+        return event;
+    }
+}
+
+// --- Notification Class ---
+class Notification {
+    enum Channel { SMS, EMAIL }
+
+    final Channel channel;
+    final String recipient;
+    final String dedupeKey; // null when every copy must be delivered
+    final String message;
+    final LocalDateTime createdAt = LocalDateTime.now();
+    int attempts;
+    long dueAtMillis;
+
+    Notification(Channel channel, String recipient, String dedupeKey, String message) {
+        this.channel = channel;
+        this.recipient = recipient;
+        this.dedupeKey = dedupeKey;
+        this.message = message;
+    }
+}
+
+// --- NotificationSender Interface ---
+// One delivery channel. send either delivers the whole batch or throws, and the outbox retries the batch.
+interface NotificationSender {
+    void send(List<Notification> batch) throws IOException;
+}
+
+// --- FileNotificationSender Class ---
+// Local stand-in for an SMS/email gateway: appends each notification as one NDJSON line
+class FileNotificationSender implements NotificationSender {
+    private final File file;
+
+    public FileNotificationSender(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public void send(List<Notification> batch) throws IOException {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream(batch.size() * 160);
+        try (JsonWriter json = new JsonWriter(lines)) {
+            for (Notification notification : batch) {
+                json.beginObject()
+                    .field("channel", notification.channel.name())
+                    .field("to", notification.recipient)
+                    .field("message", notification.message)
+                    .field("createdAt", notification.createdAt.toString())
+                    .field("attempt", notification.attempts + 1)
+                    .endObject().lineBreak();
+            }
+        }
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir.getAbsolutePath());
+        }
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            lines.writeTo(out);
+        }
+    }
+}
+
+// --- MemoryNotificationSender Class ---
+// Keeps the most recent deliveries in memory instead of sending them, for development and tests
+class MemoryNotificationSender implements NotificationSender {
+    private static final int MAX_KEPT = 1000;
+
+    private final ConcurrentLinkedDeque<Notification> sent = new ConcurrentLinkedDeque<>();
+
+    @Override
+    public void send(List<Notification> batch) {
+        for (Notification notification : batch) {
+            sent.addLast(notification);
+            if (sent.size() > MAX_KEPT) sent.pollFirst();
+        }
+    }
+
+    public List<Notification> sent() {
+        return new ArrayList<>(sent);
+    }
+}
+
+// --- Outbox Class ---
+// Asynchronous, batched delivery of notifications, so request handlers only enqueue. A single dispatcher
+// thread drains the queue in batches and retries failed batches with exponential backoff. At enqueue
+// time, duplicates of a recently queued dedupe key are dropped, and each recipient is limited to a fixed
+// number of notifications per hour.
+class Outbox {
+    enum Result { QUEUED, DUPLICATE, RATE_LIMITED, FULL }
+
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+    private static final long DEDUPE_WINDOW_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long RATE_WINDOW_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long PRUNE_INTERVAL_MILLIS = 60_000;
+
+    private static class RateWindow {
+        final long startedAt;
+        final int count;
+
+        RateWindow(long startedAt, int count) {
+            this.startedAt = startedAt;
+            this.count = count;
+        }
+    }
+
+    private final NotificationSender sender;
+    private final int batchSize;
+    private final int perRecipientPerHour;
+    private final LinkedBlockingQueue<Notification> queue;
+    private final PriorityBlockingQueue<Notification> retries =
+        new PriorityBlockingQueue<>(16, (a, b) -> Long.compare(a.dueAtMillis, b.dueAtMillis));
+    private final ConcurrentHashMap<String, Long> recentKeys = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, RateWindow> rateWindows = new ConcurrentHashMap<>();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private long lastPruneMillis = System.currentTimeMillis();
+
+    public Outbox(NotificationSender sender, int capacity, int batchSize, int perRecipientPerHour) {
+        this.sender = sender;
+        this.batchSize = batchSize;
+        this.perRecipientPerHour = perRecipientPerHour;
+        this.queue = new LinkedBlockingQueue<>(capacity);
+        Thread dispatcher = new Thread(this::dispatchLoop, "outbox-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    public Result enqueue(Notification notification) {
+        long now = System.currentTimeMillis();
+        if (notification.dedupeKey != null) {
+            boolean[] fresh = { false };
+            recentKeys.compute(notification.dedupeKey, (key, queuedAt) -> {
+                if (queuedAt != null && now - queuedAt < DEDUPE_WINDOW_MILLIS) return queuedAt;
+                fresh[0] = true;
+                return now;
+            });
+            if (!fresh[0]) {
+                duplicates.increment();
+                return Result.DUPLICATE;
+            }
+        }
+        RateWindow window = rateWindows.compute(notification.recipient, (recipient, current) ->
+            current == null || now - current.startedAt >= RATE_WINDOW_MILLIS
+                ? new RateWindow(now, 1) : new RateWindow(current.startedAt, current.count + 1));
+        if (window.count > perRecipientPerHour) {
+            release(notification, now, window);
+            rateLimited.increment();
+            return Result.RATE_LIMITED;
+        }
+        if (!queue.offer(notification)) {
+            release(notification, now, window);
+            dropped.increment();
+            return Result.FULL;
+        }
+        return Result.QUEUED;
+    }
+
+    // Undoes the dedupe key and rate count claimed for a notification that was not queued after all,
+    // so that retrying it later is neither a duplicate nor counted against the recipient
+    private void release(Notification notification, long claimedAt, RateWindow claimed) {
+        if (notification.dedupeKey != null) recentKeys.remove(notification.dedupeKey, claimedAt);
+        rateWindows.computeIfPresent(notification.recipient, (recipient, current) ->
+            current.startedAt == claimed.startedAt ? new RateWindow(current.startedAt, current.count - 1) : current);
+    }
+
+    public int pendingCount() {
+        return queue.size() + retries.size();
+    }
+
+    public long sentCount() { return sent.sum(); }
+    public long duplicateCount() { return duplicates.sum(); }
+    public long rateLimitedCount() { return rateLimited.sum(); }
+    public long droppedCount() { return dropped.sum(); }
+
+    private void dispatchLoop() {
+        List<Notification> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                long now = System.currentTimeMillis();
+                Notification retry;
+                while (batch.size() < batchSize && (retry = retries.peek()) != null && retry.dueAtMillis <= now) {
+                    batch.add(retries.poll());
+                }
+                if (batch.isEmpty()) {
+                    Notification head = retries.peek();
+                    long wait = head == null ? 1000 : Math.max(1, head.dueAtMillis - now);
+                    Notification first = queue.poll(wait, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        prune();
+                        continue;
+                    }
+                    batch.add(first);
+                }
+                queue.drainTo(batch, batchSize - batch.size());
+                deliver(batch);
+                batch.clear();
+                prune();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void deliver(List<Notification> batch) {
+        try {
+            sender.send(batch);
+            sent.add(batch.size());
+        } catch (IOException | RuntimeException e) {
+            long now = System.currentTimeMillis();
+            for (Notification notification : batch) {
+                notification.attempts++;
+                if (notification.attempts >= MAX_ATTEMPTS) {
+                    dropped.increment();
+                    System.err.println("⚠️ Dropping " + notification.channel + " notification after "
+                        + notification.attempts + " attempts: " + e.getMessage());
+                } else {
+                    long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (notification.attempts - 1));
+                    // Jitter spreads the retries of one failed batch so they do not all hit the gateway together
+                    notification.dueAtMillis = now + backoff + ThreadLocalRandom.current().nextLong(BASE_BACKOFF_MILLIS);
+                    retries.add(notification);
+                }
+            }
+        }
+    }
+
+    // Forgets dedupe keys and rate windows that can no longer affect a decision
+    private void prune() {
+        long now = System.currentTimeMillis();
+        if (now - lastPruneMillis < PRUNE_INTERVAL_MILLIS) return;
+        lastPruneMillis = now;
+        recentKeys.values().removeIf(queuedAt -> now - queuedAt >= DEDUPE_WINDOW_MILLIS);
+        rateWindows.values().removeIf(window -> now - window.startedAt >= RATE_WINDOW_MILLIS);
+    }
+}
+
+// --- OtpIssuer Class ---
+// One-time verification codes from a SecureRandom, one outstanding code per user. Codes expire, allow a
+// few wrong guesses, and are compared in constant time.
+class OtpIssuer {
+    enum Result { VERIFIED, INVALID, EXPIRED, TOO_MANY_ATTEMPTS }
+
+    public static final int TTL_MINUTES = 10;
+    private static final int MAX_ATTEMPTS = 5;
+
+    private static class Pending {
+        final byte[] code;
+        final LocalDateTime expiresAt;
+        final AtomicInteger attempts = new AtomicInteger();
+
+        Pending(String code, LocalDateTime expiresAt) {
+            this.code = code.getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final SecureRandom random = new SecureRandom();
+    private final ConcurrentHashMap<String, Pending> pending = new ConcurrentHashMap<>();
+
+    // Replaces any earlier code for the user
+    public String issue(String userId) {
+        String code = String.format(Locale.ROOT, "%06d", random.nextInt(1_000_000));
+        pending.put(userId, new Pending(code, LocalDateTime.now().plusMinutes(TTL_MINUTES)));
+        return code;
+    }
+
+    public Result verify(String userId, String code) {
+        Pending current = pending.get(userId);
+        if (current == null || current.expiresAt.isBefore(LocalDateTime.now())) {
+            if (current != null) pending.remove(userId, current);
+            return Result.EXPIRED;
+        }
+        if (current.attempts.incrementAndGet() > MAX_ATTEMPTS) {
+            pending.remove(userId, current);
+            return Result.TOO_MANY_ATTEMPTS;
+        }
+        if (!MessageDigest.isEqual(current.code, code.trim().getBytes(java.nio.charset.StandardCharsets.US_ASCII))) {
+            return Result.INVALID;
+        }
+        pending.remove(userId, current);
+        return Result.VERIFIED;
+    }
+
+    public void pruneExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        pending.values().removeIf(code -> code.expiresAt.isBefore(now));
+    }
+}
+
+// --- ResponseCache Class ---
+// Pre-serialized bodies of hot read endpoints, each valid for one data generation. Every mutation bumps
+// the generation, so an entry is served only while nothing it could depend on has changed; stale
+// entries are simply rebuilt on the next request. Gzip variants are compressed once per entry.
+class ResponseCache {
+    private static final int MAX_ENTRIES = 1024;
+    private static final int MIN_GZIP_BYTES = 256;
+
+    static class Entry {
+        final long generation;
+        final byte[] body;
+        final String etag;
+        final String gzipEtag;
+        final String nextCursor; // null on the last page
+        private volatile byte[] gzipBody;
+        private volatile boolean compressed;
+
+        Entry(long generation, byte[] body, String nextCursor) {
+            this.generation = generation;
+            this.body = body;
+            this.nextCursor = nextCursor;
+            String digest = StaticAssetCache.digest(body);
+            this.etag = "\"" + digest + "\"";
+            this.gzipEtag = "\"" + digest + "-gz\"";
+        }
+
+        // null when the body is too small for compression to pay off
+        byte[] gzipBody() {
+            if (!compressed) {
+                synchronized (this) {
+                    if (!compressed) {
+                        gzipBody = compress(body);
+                        compressed = true;
+                    }
+                }
+            }
+            return gzipBody;
+        }
+
+        private static byte[] compress(byte[] body) {
+            if (body.length < MIN_GZIP_BYTES) return null;
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+                try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                    gzip.write(body);
+                }
+                return out.size() < body.length ? out.toByteArray() : null;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+
+    private final AtomicLong generation = new AtomicLong();
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // Read this before building a body, so a write that lands meanwhile leaves the new entry already stale
+    public long generation() {
+        return generation.get();
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    // Applies a change, then bumps the generation. Bumping first would let a page built in between
+    // read the new generation with the old data and be served until the next write.
+    public void update(Runnable change) {
+        try {
+            change.run();
+        } finally {
+            invalidate();
+        }
+    }
+
+    public Entry get(String key) {
+        Entry entry = entries.get(key);
+        return entry != null && entry.generation == generation.get() ? entry : null;
+    }
+
+    public Entry put(String key, long builtAt, byte[] body, String nextCursor) {
+        // Entries of older generations are dead weight; dropping everything keeps the map bounded
+        if (entries.size() >= MAX_ENTRIES) entries.clear();
+        Entry entry = new Entry(builtAt, body, nextCursor);
+        entries.put(key, entry);
+        return entry;
+    }
+}
+
+// --- Main Web Application Class ---
+public class BloodDonationWebApp {
+    // saviour.user.store = objects (default, one User object graph per user) or compact (columnar)
+    private final UserStore users = "compact".equalsIgnoreCase(setting("saviour.user.store", "objects"))
+        ? new CompactUserStore() : new UserRepository();
+    private final EligibilityTracker eligibility = new EligibilityTracker();
+    private final Gazetteer gazetteer = new Gazetteer();
+    private final DonorGeoIndex donorLocations = new DonorGeoIndex(gazetteer);
+    // GET handlers read these live concurrent collections directly; there is no whole-state snapshot.
+    // Their iterators never throw ConcurrentModificationException but are weakly consistent, so a page
+    // can include one write and miss another that landed meanwhile. Only a request's units and status
+    // are published together, as one BloodRequest.State.
+    private final Queue<BloodRequest> requests = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<String, BloodRequest> requestsById = new ConcurrentHashMap<>();
+    // Hot requests per receiver by id sequence; my-requests pages these together with the archived ones
+    private final ConcurrentHashMap<String, ConcurrentSkipListMap<Long, BloodRequest>> requestsByReceiver = new ConcurrentHashMap<>();
+    // OPEN requests by blood type, hospital area and seriousness, ordered by priorityKey
+    private final FilterIndex<BloodRequest> openRequests = new FilterIndex<>(3);
+    private final Queue<Donation> donations = new ConcurrentLinkedQueue<>();
+    // FULFILLED and expired requests and old donations move here when a snapshot is taken
+    private final Archive archive = new Archive(new File(setting("saviour.data.dir", "data")));
+    private final int requestExpiryDays = Math.max(1, intSetting("saviour.request.expiry.days", 30));
+    private final int donationHotDays = Math.max(1, intSetting("saviour.donation.hot.days", 365));
+    private final DonationHistory donationHistory = new DonationHistory(archive);
+    private final MatchPlanner matchPlanner = new MatchPlanner(() -> openRequests.matching(null, null, null), eligibility::eligibleDonors);
+    // donations.size() walks the whole queue, so the metrics gauge reads this instead
+    private final LongAdder donationCount = new LongAdder();
+    private final AtomicLong userNumericIdCounter = new AtomicLong(1);
+    private final AtomicLong requestNumericIdCounter = new AtomicLong(1);
+    private final AtomicLong donationNumericIdCounter = new AtomicLong(1);
+    // Serialises donations per donor and per request; different requests proceed in parallel
+    private final LockStripes donationLocks = new LockStripes(64);
+    private final LockStripes registrationLocks = new LockStripes(64);
+    private HttpServer server;
+    private final int maxBodyBytes = intSetting("saviour.max.body.bytes", 16 * 1024);
+    private final StaticAssetCache staticAssets = new StaticAssetCache(new File(setting("saviour.static.dir", ".")));
+    private ExecutorService httpExecutor;
+    private final InventoryStats inventoryStats = new InventoryStats();
+    private final Metrics metrics = new Metrics();
+    private final ResponseCache responseCache = new ResponseCache();
+    private final OtpIssuer otpIssuer = new OtpIssuer();
+    // Users who confirmed their mobile number with a code; journaled, so it survives restarts
+    private final Set<String> verifiedUsers = ConcurrentHashMap.newKeySet();
+    private final Outbox outbox = new Outbox(createNotificationSender(), Math.max(1, intSetting("saviour.notify.queue", 10_000)),
+        Math.max(1, intSetting("saviour.notify.batch", 100)), Math.max(1, intSetting("saviour.notify.rate.per.hour", 10)));
+    private final int maxAlertedDonors = Math.max(0, intSetting("saviour.notify.max.donors", 50));
+    private final RequestStream requestStream = new RequestStream(Math.max(1, intSetting("saviour.stream.writers", 2)),
+        TimeUnit.SECONDS.toMillis(Math.max(1, intSetting("saviour.stream.write.timeout.seconds", 10))));
+    // Set on the shedding thread so the overload filter answers 503 instead of running the handler
+    private static final ThreadLocal<Boolean> SHEDDING = ThreadLocal.withInitial(() -> false);
+    private final ScheduledExecutorService maintenanceScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "maintenance");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Journal journal = new Journal(new File(setting("saviour.data.dir", "data")));
+    // Mutations hold the read side while applying and journaling; snapshots take the write side for a consistent cut
+    private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+
+    private boolean isEmailTaken(String email) {
+        return users.isEmailTaken(email);
+    }
+
+    private boolean isMobileTaken(long mobile) {
+        return users.isMobileTaken(mobile);
+    }
+
+    private boolean isEligibleForDonation(String userId) {
+        return isEligibleForDonation(users.findById(userId, "DONOR"));
+    }
+
+    static boolean isEligibleForDonation(User donor) {
+        if (donor == null) return false;
+        if (donor.getLastDonatedDateTime() == null) return true;
+
+        int donationCooldownDays = EligibilityTracker.cooldownDays(donor.getGender());
+        long daysSinceLastDonation = ChronoUnit.DAYS.between(donor.getLastDonatedDateTime(), LocalDateTime.now());
+        return daysSinceLastDonation >= donationCooldownDays;
+    }
+
+    static boolean canDonateTo(String donorBloodType, String receiverBloodType) {
+        BloodType donor = BloodType.parse(donorBloodType);
+        BloodType receiver = BloodType.parse(receiverBloodType);
+        return donor != null && receiver != null && donor.canDonateTo(receiver);
+    }
+
+    // A page of eligible compatible donors in id order, walking only the compatible blood-type buckets.
+    // Each bucket contributes at most one page past the cursor, so the merge keeps the true first `limit`.
+    private FilterIndex.Page<User> findMatchingDonors(BloodRequest request, Long cursor, int limit) {
+        BloodType recipient = BloodType.parse(request.getBloodType());
+        if (recipient == null) return new FilterIndex.Page<>(new ArrayList<>(), null);
+        TreeMap<Long, User> merged = new TreeMap<>();
+        boolean more = false;
+        for (BloodType donorType : BloodType.donorsFor(recipient)) {
+            FilterIndex.Page<User> page = eligibility.eligibleDonors(donorType, null, cursor, limit);
+            for (User donor : page.items) {
+                merged.put((long) numericSuffix(donor.getId()), donor);
+            }
+            more |= page.nextCursor != null;
+        }
+        List<User> items = new ArrayList<>(Math.min(limit, merged.size()));
+        Long last = null;
+        for (Map.Entry<Long, User> entry : merged.entrySet()) {
+            if (items.size() == limit) {
+                more = true;
+                break;
+            }
+            items.add(entry.getValue());
+            last = entry.getKey();
+        }
+        return new FilterIndex.Page<>(items, more ? last : null);
+    }
+
+    // Falls back to the archive, so a request still resolves once it has been fulfilled or expired and moved
+    private BloodRequest findRequest(String requestId) throws IOException {
+        BloodRequest request = requestsById.get(requestId);
+        return request != null ? request : archive.findRequest(requestId);
+    }
+
+    // State mutations, shared by the handlers and journal replay. Handlers apply a change only once its
+    // journal frame is durable, so a failed append never leaves state that would vanish on restart.
+    private UserStore.AddResult applyUser(User user) {
+        UserStore.AddResult result = users.add(user);
+        if (result == UserStore.AddResult.ADDED) responseCache.invalidate();
+        if (result == UserStore.AddResult.ADDED && "DONOR".equals(user.getRole())) {
+            // Track the stored instance: the compact store keeps its own copy, and later updates go to that
+            eligibility.track(users.findById(user.getId()));
+        }
+        return result;
+    }
+
+    private void applyRequest(BloodRequest request) {
+        responseCache.update(() -> {
+            requestsById.put(request.getId(), request);
+            requests.add(request);
+            requestsByReceiver.computeIfAbsent(request.getUserId(), k -> new ConcurrentSkipListMap<>())
+                .put((long) numericSuffix(request.getId()), request);
+            BloodRequest.State state = request.getState();
+            if (state.isOpen()) {
+                openRequests.add(priorityKey(request), request, requestDimensions(request));
+                inventoryStats.addOpen(request.getBloodType(), request.getSeriousness(), state.unitsNeeded, 1);
+            }
+        });
+    }
+
+    // HIGH before MODERATE before LOW, then oldest first. Request ids are assigned in posting
+    // order, so the id sequence stands in for createdAt and keeps keys unique.
+    private static long priorityKey(BloodRequest request) {
+        Seriousness seriousness = Seriousness.parse(request.getSeriousness());
+        long rank = seriousness == null ? Seriousness.values().length : seriousness.ordinal();
+        return (rank << 40) | numericSuffix(request.getId());
+    }
+
+    private static String[] requestDimensions(BloodRequest request) {
+        return new String[] { request.getBloodType(), FilterIndex.normalize(request.getHospitalArea()), request.getSeriousness() };
+    }
+
+    private void applyDonation(Donation donation, User donor, BloodRequest request) {
+        responseCache.update(() -> {
+            donations.add(donation);
+            donationHistory.add(donation);
+            donationCount.increment();
+            donor.setLastDonatedDateTime(donation.getDonationDateTime());
+            eligibility.track(donor);
+            if (request == null) return; // replaying a donation whose request was archived before a crash
+            
+            boolean fulfilled = !request.recordUnitDonated().isOpen();
+            if (fulfilled) {
+                openRequests.remove(priorityKey(request), requestDimensions(request));
+            }
+            inventoryStats.addOpen(request.getBloodType(), request.getSeriousness(), -1, fulfilled ? -1 : 0);
+        });
+    }
+
+    // Persistence
+    private void restoreState() throws IOException {
+        // The archive is read first: ids must never be reused, and a crash between archiving and the
+        // next snapshot leaves archived records in the journal too, which replay then skips
+        archive.open(new Archive.Listener() {
+            @Override
+            public void onRequest(BloodRequest request) {
+                requestNumericIdCounter.accumulateAndGet(numericSuffix(request.getId()) + 1, Math::max);
+            }
+
+            @Override
+            public void onDonation(Donation donation) {
+                donationHistory.noteDay(donation);
+                donationNumericIdCounter.accumulateAndGet(numericSuffix(donation.getId()) + 1, Math::max);
+            }
+        });
+        journal.open(new Journal.Listener() {
+            @Override
+            public void onUser(User user) {
+                applyUser(user);
+                userNumericIdCounter.accumulateAndGet(numericSuffix(user.getId()) + 1, Math::max);
+            }
+
+            @Override
+            public void onRequest(BloodRequest request) {
+                if (!archive.containsRequest(request.getId())) applyRequest(request);
+                requestNumericIdCounter.accumulateAndGet(numericSuffix(request.getId()) + 1, Math::max);
+            }
+
+            @Override
+            public void onDonation(Donation donation, boolean fromSnapshot) {
+                donationNumericIdCounter.accumulateAndGet(numericSuffix(donation.getId()) + 1, Math::max);
+                if (archive.containsDonation(donation)) return;
+                if (fromSnapshot) {
+                    donations.add(donation);
+                    donationHistory.add(donation);
+                    donationCount.increment();
+                } else {
+                    User donor = users.findById(donation.getDonorId(), "DONOR");
+                    BloodRequest request = requestsById.get(donation.getRequestId());
+                    if (donor == null || (request == null && !archive.containsRequest(donation.getRequestId()))) {
+                        System.err.println("⚠️ Skipping journaled donation " + donation.getId() + " with unknown donor or request");
+                        return;
+                    }
+                    applyDonation(donation, donor, request);
+                }
+            }
+
+            @Override
+            public void onVerified(String userId) {
+                verifiedUsers.add(userId);
+            }
+        });
+    }
+
+    static int numericSuffix(String id) {
+        try {
+            return Integer.parseInt(id.substring(id.lastIndexOf('-') + 1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void takeSnapshot() {
+        try {
+            long fromSeq;
+            snapshotLock.writeLock().lock();
+            try {
+                archiveColdState();
+                fromSeq = journal.prepareSnapshot(users.all(), requests, donations, verifiedUsers);
+            } finally {
+                snapshotLock.writeLock().unlock();
+            }
+            journal.commitSnapshot(fromSeq);
+        } catch (Exception e) {
+            System.err.println("⚠️ Snapshot failed: " + e.getMessage());
+        }
+    }
+
+    // Expires OPEN requests older than the expiry window, then moves FULFILLED and EXPIRED requests and
+    // donations older than the hot window into the archive. Runs under the snapshot write lock just before
+    // the cut, so the new snapshot is the first durable state without them. Nothing changes in memory
+    // until the archive append succeeds, so a failed append leaves every request open and indexed.
+    private void archiveColdState() throws IOException {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expireBefore = now.minusDays(requestExpiryDays);
+        List<BloodRequest> coldRequests = new ArrayList<>();
+        List<BloodRequest> archivedForms = new ArrayList<>();
+        List<BloodRequest> expiring = new ArrayList<>();
+        for (BloodRequest request : requests) {
+            BloodRequest.State state = request.getState();
+            if (state.isOpen() && request.getCreatedAt().isBefore(expireBefore)) {
+                coldRequests.add(request);
+                archivedForms.add(request.expiredCopy());
+                expiring.add(request);
+            } else if (!state.isOpen()) {
+                coldRequests.add(request);
+                archivedForms.add(request);
+            }
+        }
+        
+        // The queue is in recording order, so the old donations are a prefix of it
+        LocalDateTime hotSince = now.minusDays(donationHotDays);
+        List<Donation> coldDonations = new ArrayList<>();
+        for (Donation donation : donations) {
+            if (!donation.getDonationDateTime().isBefore(hotSince)) break;
+            coldDonations.add(donation);
+        }
+        if (coldRequests.isEmpty() && coldDonations.isEmpty()) return;
+        
+        archive.append(archivedForms, coldDonations);
+        for (BloodRequest request : expiring) {
+            BloodRequest.State state = request.getState();
+            request.expire();
+            openRequests.remove(priorityKey(request), requestDimensions(request));
+            inventoryStats.addOpen(request.getBloodType(), request.getSeriousness(), -state.unitsNeeded, -1);
+        }
+        for (BloodRequest request : coldRequests) {
+            requestsById.remove(request.getId());
+            ConcurrentSkipListMap<Long, BloodRequest> mine = requestsByReceiver.get(request.getUserId());
+            if (mine != null) mine.remove((long) numericSuffix(request.getId()));
+        }
+        Set<BloodRequest> archivedRequests = Collections.newSetFromMap(new IdentityHashMap<>());
+        archivedRequests.addAll(coldRequests);
+        requests.removeIf(archivedRequests::contains);
+        for (int i = 0; i < coldDonations.size(); i++) {
+            donationHistory.remove(donations.poll());
+        }
+        donationCount.add(-coldDonations.size());
+        responseCache.invalidate();
+        System.out.println("🗄️ Archived " + coldRequests.size() + " requests and " + coldDonations.size() + " donations");
+    }
+
+    // saviour.notify.sink = file (default, NDJSON lines in the data directory) or memory
+    private static NotificationSender createNotificationSender() {
+        if ("memory".equalsIgnoreCase(setting("saviour.notify.sink", "file"))) {
+            return new MemoryNotificationSender();
+        }
+        return new FileNotificationSender(new File(setting("saviour.data.dir", "data"), "notifications.ndjson"));
+    }
+    
+    // Issues a fresh code and queues it for the user's mobile; false when the outbox refused it
+    private boolean sendOtp(User user) {
+        String code = otpIssuer.issue(user.getId());
+        Notification sms = new Notification(Notification.Channel.SMS, String.valueOf(user.getMobile()), null,
+            "Your Saviour verification code is " + code + ". It expires in " + OtpIssuer.TTL_MINUTES + " minutes.");
+        return outbox.enqueue(sms) == Outbox.Result.QUEUED;
+    }
+    
+    private void recordVerified(String userId) throws IOException {
+        if (verifiedUsers.contains(userId)) return;
+        snapshotLock.readLock().lock();
+        try {
+            awaitDurable(journal.appendVerified(userId));
+            verifiedUsers.add(userId);
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    // Queues an email to eligible compatible donors in the request's area, same blood type first
+    private void alertDonors(BloodRequest request) {
+        BloodType recipient = BloodType.parse(request.getBloodType());
+        String message = request.getSeriousness() + " need for " + request.getBloodType() + " blood at "
+            + request.getHospitalArea() + " (" + request.getState().unitsNeeded + " units). Open Saviour to respond to " + request.getId() + ".";
+        int remaining = maxAlertedDonors;
+        for (BloodType donorType : BloodType.donorsFor(recipient)) {
+            if (remaining == 0) break;
+            for (User donor : eligibility.eligibleDonors(donorType, request.getHospitalArea(), null, remaining).items) {
+                outbox.enqueue(new Notification(Notification.Channel.EMAIL, donor.getEmail(),
+                    request.getId() + "|" + donor.getId(), message));
+                remaining--;
+            }
+        }
+    }
+
+    // Journals a new user and adds it once the frame is durable. The user's email and mobile stripes stay
+    // locked from the uniqueness check to the add, so no concurrent registration can claim either in between.
+    private UserStore.AddResult registerUser(User user) throws IOException {
+        String emailKey = user.getEmail().toLowerCase(Locale.ROOT);
+        snapshotLock.readLock().lock();
+        registrationLocks.lock(emailKey, user.getMobile());
+        try {
+            if (isEmailTaken(user.getEmail())) return UserStore.AddResult.EMAIL_TAKEN;
+            if (isMobileTaken(user.getMobile())) return UserStore.AddResult.MOBILE_TAKEN;
+            awaitDurable(journal.appendUser(user));
+            return applyUser(user);
+        } finally {
+            registrationLocks.unlock(emailKey, user.getMobile());
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    // Blocks until the journaled change is on disk (group-committed with other writers)
+    private void awaitDurable(CompletableFuture<Void> durable) throws IOException {
+        try {
+            durable.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while saving change");
+        } catch (ExecutionException e) {
+            throw new IOException("could not save change", e.getCause());
+        }
+    }
+
+    // Configuration: a -Dsaviour.x.y system property wins, then the SAVIOUR_X_Y environment variable
+    static String setting(String name, String defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null) value = System.getenv(name.toUpperCase(Locale.ROOT).replace('.', '_'));
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    static int intSetting(String name, int defaultValue) {
+        try {
+            return Integer.parseInt(setting(name, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            System.err.println("⚠️ Ignoring invalid " + name + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    // saviour.executor = fixed (default), virtual (one virtual thread per exchange, Java 21+)
+    // or bounded (fixed pool with a bounded queue; overflow is answered 503 on a shedding thread, and once
+    // that thread's own bounded queue is full the rejection reaches the server, which closes the connection)
+    private ExecutorService createHttpExecutor() {
+        int threads = Math.max(1, intSetting("saviour.threads", 10));
+        String mode = setting("saviour.executor", "fixed").toLowerCase(Locale.ROOT);
+        switch (mode) {
+            case "virtual":
+                try {
+                    return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    System.err.println("⚠️ Virtual threads need Java 21+, falling back to a fixed pool of " + threads);
+                    return Executors.newFixedThreadPool(threads);
+                }
+            case "bounded":
+                int queueSize = Math.max(1, intSetting("saviour.queue", 100));
+                ExecutorService shedder = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueSize), r -> {
+                        Thread thread = new Thread(r, "http-shedder");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueSize),
+                    (task, pool) -> shedder.execute(() -> {
+                        SHEDDING.set(true);
+                        try {
+                            task.run();
+                        } finally {
+                            SHEDDING.set(false);
+                        }
+                    }));
+            case "fixed":
+                return Executors.newFixedThreadPool(threads);
+            default:
+                System.err.println("⚠️ Unknown saviour.executor '" + mode + "', using a fixed pool");
+                return Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    // Answers 503 for exchanges the bounded executor could not queue
+    class OverloadFilter extends Filter {
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            if (SHEDDING.get()) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                setCORSHeaders(exchange);
+                sendResponse(exchange, 503, "{\"success\": false, \"message\": \"Server is busy, please retry shortly\"}");
+                return;
+            }
+            chain.doFilter(exchange);
+        }
+
+        @Override
+        public String description() {
+            return "Sheds load when the request queue is full";
+        }
+    }
+
+    // Times every exchange on a context, including ones the overload filter sheds
+    class MetricsFilter extends Filter {
+        private final Metrics.ContextMetrics contextMetrics;
+
+        MetricsFilter(String path) {
+            this.contextMetrics = metrics.context(path);
+        }
+
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                chain.doFilter(exchange);
+                failed = false;
+            } finally {
+                contextMetrics.record(exchange.getResponseCode(), failed, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public String description() {
+            return "Records request counts and latency";
+        }
+    }
+
+    private void addContext(String path, HttpHandler handler) {
+        List<Filter> filters = server.createContext(path, handler).getFilters();
+        filters.add(new MetricsFilter(path));
+        filters.add(new OverloadFilter());
+    }
+
+    private void registerGauges() {
+        metrics.gauge("saviour_users", "Registered donors and receivers", users::size);
+        metrics.gauge("saviour_requests", "Blood requests posted", () -> requestsById.size() + archive.requestCount());
+        metrics.gauge("saviour_donations", "Donations recorded", () -> donationCount.sum() + archive.donationCount());
+        metrics.gauge("saviour_archived_requests", "Requests moved to the archive", archive::requestCount);
+        metrics.gauge("saviour_archived_donations", "Donations moved to the archive", archive::donationCount);
+        metrics.gauge("saviour_outbox_pending", "Notifications queued or waiting to be retried", outbox::pendingCount);
+        metrics.gauge("saviour_outbox_sent", "Notifications handed to the sender", outbox::sentCount);
+        metrics.gauge("saviour_outbox_duplicates", "Notifications dropped as duplicates", outbox::duplicateCount);
+        metrics.gauge("saviour_outbox_rate_limited", "Notifications refused by the per-recipient rate limit", outbox::rateLimitedCount);
+        metrics.gauge("saviour_outbox_dropped", "Notifications lost to a full queue or exhausted retries", outbox::droppedCount);
+        metrics.gauge("saviour_stream_subscribers", "Open request event streams", requestStream::subscriberCount);
+        metrics.gauge("saviour_match_proposals", "Donors holding an auto-matching proposal", matchPlanner::proposalCount);
+        metrics.gauge("saviour_match_last_run_ms", "Duration of the last auto-matching run", matchPlanner::lastRunMillis);
+        if (httpExecutor instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) httpExecutor;
+            metrics.gauge("saviour_executor_queue_depth", "Exchanges waiting for an HTTP worker thread", () -> pool.getQueue().size());
+            metrics.gauge("saviour_executor_active_threads", "HTTP worker threads currently running a handler", pool::getActiveCount);
+        }
+    }
+
+    // Web Server Setup
+    public void startWebServer() {
+        try {
+            gazetteer.load(new File(setting("saviour.gazetteer", "gazetteer.csv")));
+            eligibility.addListener(donorLocations);
+            eligibility.addListener(inventoryStats);
+            // Cooldowns expire without any request, and that changes get-donors pages too
+            eligibility.addListener(new EligibilityTracker.Listener() {
+                @Override
+                public void onEligible(User donor) {
+                    responseCache.invalidate();
+                }
+
+                @Override
+                public void onIneligible(User donor) {
+                    responseCache.invalidate();
+                }
+            });
+            restoreState();
+            Runtime.getRuntime().addShutdownHook(new Thread(journal::close, "journal-shutdown"));
+            
+            int port = intSetting("saviour.port", 8080);
+            server = HttpServer.create(new InetSocketAddress(port), intSetting("saviour.backlog", 0));
+            
+            // Serve HTML files
+            staticAssets.loadAll();
+            if (Boolean.parseBoolean(setting("saviour.static.watch", "false"))) {
+                staticAssets.watch();
+            }
+            addContext("/", new StaticFileHandler());
+            
+            // API endpoints
+            addContext("/api/register-donor", new RegisterDonorHandler());
+            addContext("/api/register-receiver", new RegisterReceiverHandler());
+            addContext("/api/post-request", new PostRequestHandler());
+            addContext("/api/get-requests", new GetRequestsHandler());
+            addContext("/api/get-donors", new GetDonorsHandler());
+            addContext("/api/record-donation", new RecordDonationHandler());
+            addContext("/api/donor-details", new DonorDetailsHandler());
+            addContext("/api/my-requests", new MyRequestsHandler());
+            addContext("/api/match", new MatchHandler());
+            addContext("/api/proposals", new ProposalsHandler());
+            addContext("/api/send-otp", new SendOtpHandler());
+            addContext("/api/verify-otp", new VerifyOtpHandler());
+            addContext("/api/nearby-donors", new NearbyDonorsHandler());
+            addContext("/api/donation-history", new DonationHistoryHandler());
+            addContext("/api/request-donations", new RequestDonationsHandler());
+            addContext("/api/bulk/donors", new BulkDonorsHandler());
+            addContext("/api/bulk/donations", new BulkDonationsHandler());
+            addContext("/api/stats", new StatsHandler());
+            addContext("/api/stream/requests", new RequestStreamHandler());
+            addContext("/metrics", new MetricsHandler());
+            
+            httpExecutor = createHttpExecutor();
+            registerGauges();
+            server.setExecutor(httpExecutor);
+            server.start();
+            
+            maintenanceScheduler.scheduleWithFixedDelay(eligibility::promoteDue, 1, 1, TimeUnit.MINUTES);
+            maintenanceScheduler.scheduleWithFixedDelay(otpIssuer::pruneExpired, 1, 1, TimeUnit.MINUTES);
+            maintenanceScheduler.scheduleWithFixedDelay(requestStream::heartbeat, 20, 20, TimeUnit.SECONDS);
+            maintenanceScheduler.scheduleWithFixedDelay(requestStream::dropStalled, 1, 1, TimeUnit.SECONDS);
+            long snapshotMinutes = Math.max(1, intSetting("saviour.snapshot.minutes", 10));
+            maintenanceScheduler.scheduleWithFixedDelay(this::takeSnapshot, snapshotMinutes, snapshotMinutes, TimeUnit.MINUTES);
+            long matchSeconds = Math.max(1, intSetting("saviour.match.seconds", 60));
+            matchPlanner.trigger();
+            maintenanceScheduler.scheduleWithFixedDelay(matchPlanner::trigger, matchSeconds, matchSeconds, TimeUnit.SECONDS);
+            
+            System.out.println("🌐 Blood Donation Web App started at http://localhost:" + port);
+            System.out.println("📱 Open your browser and go to http://localhost:" + port + " to use the app!");
+            System.out.println("Press Ctrl+C to stop the server");
+            
+        } catch (IOException e) {
+            System.err.println("❌ Failed to start web server: " + e.getMessage());
+        }
+    }
+
+    class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if ("GET".equals(exchange.getRequestMethod())) {
+                byte[] body = metrics.toPrometheus().getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            } else {
+                exchange.sendResponseHeaders(405, -1);
+            }
+            exchange.close();
+        }
+    }
+
+    // O(1) dashboard aggregates: donors by eligibility and open units/requests by seriousness, per blood type
+    class StatsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            setCORSHeaders(exchange);
+            if ("GET".equals(exchange.getRequestMethod())) {
+                try {
+                    FormParams params = FormParams.ofQuery(exchange.getRequestURI());
+                    String location = params.get("location");
+                    BloodType filter = BloodType.parse(params.get("bloodType"));
+                    if (params.has("bloodType") && filter == null) {
+                        sendMessage(exchange, 400, false, "Unknown blood type");
+                        return;
+                    }
+                    BloodType[] bloodTypes = filter == null ? BloodType.values() : new BloodType[] { filter };
+                    // Donors whose cooldown has ended move to the eligible counters here, as they do for get-donors
+                    eligibility.promoteDue();
+
+                    sendJson(exchange, 200, json -> {
+                        long eligibleTotal = 0, ineligibleTotal = 0, unitsTotal = 0, requestsTotal = 0;
+                        json.beginObject().field("success", true);
+                        if (location != null) json.field("location", location);
+                        json.name("bloodTypes").beginArray();
+                        for (BloodType bloodType : bloodTypes) {
+                            InventoryStats.DonorCounts donors = inventoryStats.donors(bloodType, location);
+                            long eligible = donors.eligible.sum(), ineligible = donors.ineligible.sum();
+                            eligibleTotal += eligible;
+                            ineligibleTotal += ineligible;
+                            json.beginObject()
+                                .field("bloodType", bloodType.getLabel())
+                                .field("eligibleDonors", eligible)
+                                .field("ineligibleDonors", ineligible);
+
+                            long units = 0, openCount = 0;
+                            json.name("open").beginObject();
+                            for (Seriousness seriousness : Seriousness.values()) {
+                                InventoryStats.OpenCounts open = inventoryStats.open(bloodType, seriousness);
+                                long levelUnits = open.units.sum(), levelRequests = open.requests.sum();
+                                units += levelUnits;
+                                openCount += levelRequests;
+                                json.name(seriousness.name()).beginObject()
+                                    .field("units", levelUnits)
+                                    .field("requests", levelRequests)
+                                    .endObject();
+                            }
+                            json.endObject()
+                                .field("openUnits", units)
+                                .field("openRequests", openCount)
+                                .endObject();
+                            unitsTotal += units;
+                            requestsTotal += openCount;
+                        }
+                        json.endArray()
+                            .name("totals").beginObject()
+                            .field("eligibleDonors", eligibleTotal)
+                            .field("ineligibleDonors", ineligibleTotal)
+                            .field("openUnits", unitsTotal)
+                            .field("openRequests", requestsTotal)
+                            .endObject()
+                            .endObject();
+                    });
+                } catch (Exception e) {
+                    sendResponse(exchange, 500, "{\"error\": \"Failed to get stats\"}");
+                }
+            }
+        }
+    }
+
+    // Streams newly posted and updated requests the donor's blood type can give to, as Server-Sent Events
+    class RequestStreamHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            setCORSHeaders(exchange);
+            if ("GET".equals(exchange.getRequestMethod())) {
+                try {
+                    String donorId = FormParams.ofQuery(exchange.getRequestURI()).get("donorId", "");
+                    User donor = users.findById(donorId, "DONOR");
+                    BloodType bloodType = donor == null ? null : BloodType.parse(donor.getBloodType());
+                    if (bloodType == null) {
+                        sendResponse(exchange, 404, "{\"success\": false, \"message\": \"Donor not found\"}");
+                        return;
+                    }
+                    requestStream.subscribe(exchange, bloodType);
+                } catch (Exception e) {
+                    sendResponse(exchange, 500, "{\"error\": \"Failed to open request stream\"}");
+                }
+            }
+        }
+    }
+
+    // A donor's donations, newest first: ?donorId=&since=yyyy-MM-dd&limit=&cursor=
+    class DonationHistoryHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            setCORSHeaders(exchange);
+            if ("GET".equals(exchange.getRequestMethod())) {
+                try {
+                    FormParams params = FormParams.ofQuery(exchange.getRequestURI());
+                    String donorId = params.get("donorId", "");
+                    if (users.findById(donorId, "DONOR") == null) {
+                        sendResponse(exchange, 404, "{\"success\": false, \"message\": \"Donor not found\"}");
+                        return;
+                    }
+                    sendPage(exchange, donationHistory.forDonor(donorId, parseSince(params), parseCursor(params), parseLimit(params)),
+                        BloodDonationWebApp::writeDonation);
+                } catch (DateTimeParseException e) {
+                    sendMessage(exchange, 400, false, "since must be a yyyy-MM-dd date");
+                } catch (Exception e) {
+                    sendResponse(exchange, 500, "{\"error\": \"Failed to get donation history\"}");
+                }
+            }
+        }
+    }
+
+    // Donations made against one request, newest first: ?requestId=&since=yyyy-MM-dd&limit=&cursor=
+    class RequestDonationsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            setCORSHeaders(exchange);
+            if ("GET".equals(exchange.getRequestMethod())) {
+                try {
+                    FormParams params = FormParams.ofQuery(exchange.getRequestURI());
+                    String requestId = params.get("requestId", "");
+                    if (!requestsById.containsKey(requestId) && !archive.containsRequest(requestId)) {
+                        sendResponse(exchange, 404, "{\"success\": false, \"message\": \"Request not found\"}");
+                        return;
+                    }
+                    sendPage(exchange, donationHistory.forRequest(requestId, parseSince(params), parseCursor(params), parseLimit(params)),
+                        BloodDonationWebApp::writeDonation);
+                } catch (DateTimeParseException e) {
+                    sendMessage(exchange, 400, false, "since must be a yyyy-MM-dd date");
+                } catch (Exception e) {
+                    sendResponse(exchange, 500, "{\"error\": \"Failed to get request donations\"}");
+                }
+            }
+        }
+    }
+
+    // POST streams CSV or NDJSON donors in, GET streams every donor out in the same shape
+    class BulkDonorsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            setCORSHeaders(exchange);
+            if ("OPTIONS".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            try {
+                FormParams query = FormParams.ofQuery(exchange.getRequestURI());
+                RowReader.Format format = RowReader.formatOf(query.get("format"),
+                    "GET".equals(exchange.getRequestMethod()) ? null : exchange.getRequestHeaders().getFirst("Content-Type"));
+                if (format == null) {
+                    sendMessage(exchange, 415, false, "Send text/csv or application/x-ndjson, or pass format=csv|ndjson");
+                    return;
+                }
+                if ("POST".equals(exchange.getRequestMethod())) {
+                    importDonors(exchange, format);
+                } else if ("GET".equals(exchange.getRequestMethod())) {
+                    exportRows(exchange, format, DONOR_COLUMNS, users.withRole("DONOR"), BloodDonationWebApp::donorRow);
+                }
+            } catch (Exception e) {
+                sendMessage(exchange, 500, false, "Bulk donor transfer failed: " + e.getMessage());
+            }
+        }
+    }
+
+    class BulkDonationsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            setCORSHeaders(exchange);
+            if ("GET".equals(exchange.getRequestMethod())) {
+                try {
+                    RowReader.Format format = RowReader.formatOf(FormParams.ofQuery(exchange.getRequestURI()).get("format"), null);
+                    if (format == null) {
+                        sendMessage(exchange, 400, false, "Pass format=csv or format=ndjson");
+                        return;
+                    }
+                    exportRows(exchange, format, DONATION_COLUMNS, exportedDonations(), BloodDonationWebApp::donationRow);
+                } catch (Exception e) {
+                    sendMessage(exchange, 500, false, "Donation export failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Every donation, archived ones first in the order they were archived, then the hot queue. The hot queue is
+    // copied before the archive's end is read: a donation archived in between is then in both, and the hot
+    // copy skips it, while one archived after the end was read is only in the hot copy.
+    private Iterable<Donation> exportedDonations() {
+        List<Donation> hot = new ArrayList<>(donations);
+        long archivedEnd = archive.end();
+        Iterable<Donation> archived = archive.donationsBefore(archivedEnd);
+        return () -> new Iterator<Donation>() {
+            private final Iterator<Donation> cold = archived.iterator();
+            private final Iterator<Donation> warm = hot.iterator();
+            private Donation next = advance();
+
+            private Donation advance() {
+                if (cold.hasNext()) return cold.next();
+                while (warm.hasNext()) {
+                    Donation donation = warm.next();
+                    if (!archive.archivedBefore(donation, archivedEnd)) return donation;
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Donation next() {
+                if (next == null) throw new java.util.NoSuchElementException();
+                Donation donation = next;
+                next = advance();
+                return donation;
+            }
+        };
+    }
+
+    private static final int IMPORT_BATCH_SIZE = 1000;
+    private static final int MAX_REPORTED_ROW_ERRORS = 1000;
+
+    // Validates each row with the register-donor rules and applies valid rows in batches: one read-lock
+    // hold and one durability wait per batch, so the journal's group commit absorbs the whole batch
+    private void importDonors(HttpExchange exchange, RowReader.Format format) throws IOException {
+        long imported = 0, rejected = 0;
+        List<RowError> rowErrors = new ArrayList<>();
+        List<User> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+        List<Integer> batchLines = new ArrayList<>(IMPORT_BATCH_SIZE);
+
+        try (RowReader rows = new RowReader(exchange.getRequestBody(), format)) {
+            while (true) {
+                Map<String, String> row;
+                try {
+                    row = rows.next();
+                } catch (RowReader.MalformedRowException e) {
+                    rejected++;
+                    reportRowError(rowErrors, rows.lineNumber(), Collections.singletonMap("row", e.getMessage()));
+                    continue;
+                }
+                if (row != null) {
+                    User donor = donorFromRow(row, rowErrors, rows.lineNumber());
+                    if (donor == null) {
+                        rejected++;
+                    } else {
+                        batch.add(donor);
+                        batchLines.add(rows.lineNumber());
+                    }
+                }
+                if (batch.size() == IMPORT_BATCH_SIZE || (row == null && !batch.isEmpty())) {
+                    int added = applyImportBatch(batch, batchLines, rowErrors);
+                    imported += added;
+                    rejected += batch.size() - added;
+                    batch.clear();
+                    batchLines.clear();
+                }
+                if (row == null) break;
+            }
+        }
+
+        // Duplicate rows are only found when their batch is applied, after later rows were already validated
+        rowErrors.sort((a, b) -> Integer.compare(a.line, b.line));
+        final long importedCount = imported, rejectedCount = rejected;
+        sendJson(exchange, 200, json -> {
+            json.beginObject()
+                .field("success", true)
+                .field("imported", importedCount)
+                .field("rejected", rejectedCount)
+                .field("errorsTruncated", rejectedCount > rowErrors.size())
+                .name("errors").beginArray();
+            for (RowError error : rowErrors) {
+                json.beginObject().field("line", error.line).name("errors").beginObject();
+                for (Map.Entry<String, String> field : error.errors.entrySet()) {
+                    json.field(field.getKey(), field.getValue());
+                }
+                json.endObject().endObject();
+            }
+            json.endArray().endObject();
+        });
+    }
+
+    private User donorFromRow(Map<String, String> row, List<RowError> rowErrors, int line) {
+        String name = row.getOrDefault("name", "").trim();
+        String email = row.getOrDefault("email", "").trim();
+        long mobile;
+        try {
+            mobile = Long.parseLong(row.getOrDefault("mobile", "").trim());
+        } catch (NumberFormatException e) {
+            mobile = 0;
+        }
+        BloodType bloodType = BloodType.parse(row.get("bloodType"));
+        String location = row.getOrDefault("location", "").trim();
+        Gender gender = Gender.parse(row.get("gender"));
+
+        Validator validator = validateDonor(name, email, mobile, bloodType, location, gender);
+        if (validator.hasErrors()) {
+            reportRowError(rowErrors, line, validator.errors());
+            return null;
+        }
+        String donorId = String.valueOf(userNumericIdCounter.getAndIncrement());
+        User donor = new User(donorId, name, email, bloodType.getLabel(), location, mobile, "DONOR", gender.name());
+        donor.setLastDonatedDateTime(parseLastDonated(row.getOrDefault("lastDonated", "")));
+        return donor;
+    }
+
+    private int applyImportBatch(List<User> batch, List<Integer> lines, List<RowError> rowErrors) throws IOException {
+        int added = 0;
+        List<User> accepted = new ArrayList<>(batch.size());
+        Set<String> batchEmails = new HashSet<>();
+        Set<Long> batchMobiles = new HashSet<>();
+        CompletableFuture<Void> durable = null;
+        snapshotLock.readLock().lock();
+        registrationLocks.lockAll();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                User donor = batch.get(i);
+                if (isEmailTaken(donor.getEmail()) || !batchEmails.add(donor.getEmail().toLowerCase(Locale.ROOT))) {
+                    reportRowError(rowErrors, lines.get(i), Collections.singletonMap("email", "Email already registered"));
+                } else if (isMobileTaken(donor.getMobile()) || !batchMobiles.add(donor.getMobile())) {
+                    reportRowError(rowErrors, lines.get(i), Collections.singletonMap("mobile", "Mobile number already registered"));
+                } else {
+                    durable = journal.appendUser(donor);
+                    accepted.add(donor);
+                }
+            }
+            // Frames are forced in append order, so the last one covers the whole batch
+            if (durable != null) awaitDurable(durable);
+            for (User donor : accepted) {
+                if (applyUser(donor) == UserStore.AddResult.ADDED) added++;
+            }
+        } finally {
+            registrationLocks.unlockAll();
+            snapshotLock.readLock().unlock();
+        }
+        return added;
+    }
+
+    private static class RowError {
+        final int line;
+        final Map<String, String> errors;
+
+        RowError(int line, Map<String, String> errors) {
+            this.line = line;
+            this.errors = errors;
+        }
+    }
+
+    private static void reportRowError(List<RowError> rowErrors, int line, Map<String, String> errors) {
+        if (rowErrors.size() < MAX_REPORTED_ROW_ERRORS) rowErrors.add(new RowError(line, errors));
+    }
+
+    private static final String[] DONOR_COLUMNS = {"id", "name", "email", "mobile", "bloodType", "location", "gender", "lastDonated"};
+    private static final String[] DONATION_COLUMNS = {"id", "donorId", "requestId", "donatedAt"};
+
+    interface RowSource<T> {
+        Object[] values(T item);
+    }
+
+    private static Object[] donorRow(User donor) {
+        LocalDateTime lastDonated = donor.getLastDonatedDateTime();
+        return new Object[] { donor.getId(), donor.getName(), donor.getEmail(), donor.getMobile(), donor.getBloodType(),
+            donor.getLocation(), donor.getGender(), lastDonated == null ? "NEVER" : lastDonated.toLocalDate().toString() };
+    }
+
+    private static Object[] donationRow(Donation donation) {
+        return new Object[] { donation.getId(), donation.getDonorId(), donation.getRequestId(), donation.getDonationDateTime().toString() };
+    }
+
+    // Writes one line per item with chunked encoding; nothing is collected in memory first
+    private <T> void exportRows(HttpExchange exchange, RowReader.Format format, String[] columns,
+                                Iterable<T> items, RowSource<T> source) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type",
+            format == RowReader.Format.CSV ? "text/csv; charset=utf-8" : "application/x-ndjson; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        if (format == RowReader.Format.NDJSON) {
+            try (JsonWriter json = new JsonWriter(exchange.getResponseBody())) {
+                for (T item : items) {
+                    Object[] values = source.values(item);
+                    json.beginObject();
+                    for (int i = 0; i < columns.length; i++) {
+                        if (values[i] instanceof Long) {
+                            json.field(columns[i], (long) (Long) values[i]);
+                        } else {
+                            json.field(columns[i], (String) values[i]);
+                        }
+                    }
+                    json.endObject().lineBreak();
+                }
+            }
+            return;
+        }
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), java.nio.charset.StandardCharsets.UTF_8), 1 << 16)) {
+            out.write(String.join(",", columns));
+            out.write('\n');
+            for (T item : items) {
+                Object[] values = source.values(item);
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) out.write(',');
+                    out.write(csvField(String.valueOf(values[i])));
+                }
+                out.write('\n');
+            }
+        }
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    // Static file handler to serve HTML, CSS, JS files from the in-memory asset cache
+    class StaticFileHandler implements HttpHandler {
+        private final String assetCacheControl = "public, max-age=" + intSetting("saviour.static.max.age", 300);
+        
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String method = exchange.getRequestMethod();
+            StaticAssetCache.Asset asset = staticAssets.get(exchange.getRequestURI().getPath());
+            if (asset != null && !("GET".equals(method) || "HEAD".equals(method))) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                exchange.close();
+                return;
+            }
+            if (asset == null) {
+                String response = "<!DOCTYPE html><html><head><title>File Not Found</title></head><body><h1>404 - File Not Found</h1><p>The requested file was not found.</p></body></html>";
+                byte[] responseBytes = response.getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+                exchange.sendResponseHeaders(404, responseBytes.length);
+                exchange.getResponseBody().write(responseBytes);
+                exchange.getResponseBody().close();
+                return;
+            }
+            
+            boolean gzip = asset.gzipBody != null && acceptsGzip(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            String etag = gzip ? asset.gzipEtag : asset.etag;
+            Headers headers = exchange.getResponseHeaders();
+            headers.set("Content-Type", asset.contentType);
+            headers.set("ETag", etag);
+            // HTML is revalidated on every load so new script/style ETags are picked up promptly
+            headers.set("Cache-Control", asset.contentType.startsWith("text/html") ? "no-cache" : assetCacheControl);
+            headers.set("Vary", "Accept-Encoding");
+            
+            if (etagMatches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            
+            byte[] body = gzip ? asset.gzipBody : asset.body;
+            if (gzip) headers.set("Content-Encoding", "gzip");
+            if ("HEAD".equals(method)) {
+                // HttpServer owns Content-Length for HEAD and rejects an explicit length here
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+
+    // API Handlers
+    class RegisterDonorHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            setCORSHeaders(exchange);
+            if ("OPTIONS".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            
+            if ("POST".equals(exchange.getRequestMethod())) {
+                try {
+                    FormParams params = readForm(exchange);
+                    if (params == null) return;
+                    
+                    String name = params.get("name", "");
+                    String email = params.get("email", "");
+                    long mobile = params.getLong("mobile", 0);
+                    BloodType bloodType = BloodType.parse(params.get("bloodType"));
+                    String location = params.get("location", "");
+                    Gender gender = params.getEnum("gender", Gender.class);
+                    LocalDateTime lastDonated = parseLastDonated(params.get("lastDonated", ""));
+                    
+                    // Validate inputs
+                    Validator validator = validateDonor(name, email, mobile, bloodType, location, gender);
+                    if (validator.hasErrors()) {
+                        sendValidationErrors(exchange, "Invalid input data. Please check all fields.", validator);
+                        return;
+                    }
+                    
+                    if (isEmailTaken(email)) {
+                        sendResponse(exchange, 400, "{\"success\": false, \"message\": \"Email already registered.\"}");
+                        return;
+                    }
+                    
+                    if (isMobileTaken(mobile)) {
+                        sendResponse(exchange, 400, "{\"success\": false, \"message\": \"Mobile number already registered.\"}");
+                        return;
+                    }
+                    
+                    String donorId = String.valueOf(userNumericIdCounter.getAndIncrement());
+                    User newDonor = new User(donorId, name, email, bloodType.getLabel(), location, mobile, "DONOR", gender.name());
+                    newDonor.setLastDonatedDateTime(lastDonated);
+                    
+                    // The pre-checks above fail fast; add() re-checks atomically in case of a concurrent registration
+                    UserStore.AddResult result = registerUser(newDonor);
+                    if (result == UserStore.AddResult.EMAIL_TAKEN) {
+                        sendResponse(exchange, 400, "{\"success\": false, \"message\": \"Email already registered.\"}");
+                        return;
+                    }
+                    if (result == UserStore.AddResult.MOBILE_TAKEN) {
+                        sendResponse(exchange, 400, "{\"success\": false, \"message\": \"Mobile number already registered.\"}");
+                        return;
+                    }
+                    if (result != UserStore.AddResult.ADDED) {
+                        sendResponse(exchange, 500, "{\"success\": false, \"message\": \"Registration failed: please try again.\"}");
+                        return;
+                    }
+                    boolean otpSent = sendOtp(newDonor);
+                    
+                    String response = "{\"success\": true, \"message\": \"Donor registered successfully!\", \"userId\": \"" + donorId + "\", \"otpSent\": " + otpSent + "}";
+                    sendResponse(exchange, 200, response);
+                    
+                } catch (Exception e) {
+                    sendMessage(exchange, 500, false, "Registration failed: " + e.getMessage());
+                }
+            }
         }
     }
     
-    class RecordDonationHandler implements HttpHandler {
+    class RegisterReceiverHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             setCORSHeaders(exchange);
@@ -504,41 +4921,185 @@ public class BloodDonationWebApp {
             
             if ("POST".equals(exchange.getRequestMethod())) {
                 try {
-                    String requestBody = new String(exchange.getRequestBody().readAllBytes());
-                    String[] params = requestBody.split("&");
-                    
-                    String donorIdParam = "";
-                    String requestIdParam = "";
-                    
-                    for (String param : params) {
-                        String[] kv = param.split("=", 2);
-                        if (kv.length == 2) {
-                            String key = URLDecoder.decode(kv[0], "UTF-8");
-                            String value = URLDecoder.decode(kv[1], "UTF-8");
-                            
-                            switch (key) {
-                                case "donorId": donorIdParam = value; break;
-                                case "requestId": requestIdParam = value; break;
-                            }
-                        }
+                    FormParams params = readForm(exchange);
+                    if (params == null) return;
+                    
+                    String name = params.get("name", "");
+                    String email = params.get("email", "");
+                    long mobile = params.getLong("mobile", 0);
+                    String location = params.get("location", "");
+                    Gender gender = params.getEnum("gender", Gender.class);
+                    
+                    Validator validator = new Validator()
+                        .name(name)
+                        .email(email)
+                        .mobile(mobile)
+                        .notBlank("location", location)
+                        .present("gender", gender, "Choose MALE, FEMALE or OTHER");
+                    if (validator.hasErrors()) {
+                        sendValidationErrors(exchange, "Invalid input data", validator);
+                        return;
                     }
                     
-                    final String donorId = donorIdParam;
-                    final String requestId = requestIdParam;
+                    if (isEmailTaken(email)) {
+                        sendResponse(exchange, 400, "{\"success\": false, \"message\": \"Email already registered\"}");
+                        return;
+                    }
                     
-                    User donor = users.stream().filter(u -> u.getId().equals(donorId) && u.getRole().equals("DONOR")).findFirst().orElse(null);
-                    if (donor == null) {
-                        sendResponse(exchange, 400, "{\"success\": false, \"message\": \"Donor not found\"}");
+                    if (isMobileTaken(mobile)) {
+                        sendResponse(exchange, 400, "{\"success\": false, \"message\": \"Mobile number already registered\"}");
                         return;
                     }
                     
-                    if (!isEligibleForDonation(donorId)) {
-                        sendResponse(exchange, 400, "{\"success\": false, \"message\": \"Donor not eligible for donation yet\"}");
+                    String receiverId = "REC-" + userNumericIdCounter.getAndIncrement();
+                    User newReceiver = new User(receiverId, name, email, null, location, mobile, "RECEIVER", gender.name());
+                    UserStore.AddResult result = registerUser(newReceiver);
+                    if (result == UserStore.AddResult.EMAIL_TAKEN) {
+                        sendResponse(exchange, 400, "{\"success\": false, \"message\": \"Email already registered\"}");
+                        return;
+                    }
+                    if (result == UserStore.AddResult.MOBILE_TAKEN) {
+                        sendResponse(exchange, 400, "{\"success\": false, \"message\": \"Mobile number already registered\"}");
                         return;
                     }
+                    if (result != UserStore.AddResult.ADDED) {
+                        sendResponse(exchange, 500, "{\"success\": false, \"message\": \"Registration failed: please try again\"}");
+                        return;
+                    }
+                    boolean otpSent = sendOtp(newReceiver);
                     
-                    BloodRequest request = requests.stream().filter(r -> r.getId().equals(requestId) && r.getStatus().equals("OPEN")).findFirst().orElse(null);
-                    if (request == null) {
+                    String response = "{\"success\": true, \"message\": \"Receiver registered successfully!\", \"userId\": \"" + receiverId + "\", \"otpSent\": " + otpSent + "}";
+                    sendResponse(exchange, 200, response);
+                    
+                } catch (Exception e) {
+                    sendMessage(exchange, 500, false, "Registration failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    class PostRequestHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            setCORSHeaders(exchange);
+            if ("OPTIONS".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            
+            if ("POST".equals(exchange.getRequestMethod())) {
+                try {
+                    FormParams params = readForm(exchange);
+                    if (params == null) return;
+                    
+                    String userId = params.get("userId", "");
+                    BloodType bloodType = BloodType.parse(params.get("bloodType"));
+                    String hospitalArea = params.get("hospitalArea", "");
+                    int unitsNeeded = params.getInt("unitsNeeded", 0);
+                    Seriousness seriousness = params.getEnum("seriousness", Seriousness.class);
+                    
+                    User user = users.findById(userId);
+                    if (user == null || user.getRole().equals("DONOR")) {
+                        sendResponse(exchange, 400, "{\"success\": false, \"message\": \"Invalid user or only receivers can post requests\"}");
+                        return;
+                    }
+                    
+                    Validator validator = new Validator()
+                        .present("bloodType", bloodType, "Choose one of A+, A-, B+, B-, AB+, AB-, O+, O-")
+                        .notBlank("hospitalArea", hospitalArea)
+                        .range("unitsNeeded", unitsNeeded, 1, 10)
+                        .present("seriousness", seriousness, "Choose LOW, MODERATE or HIGH");
+                    if (validator.hasErrors()) {
+                        sendValidationErrors(exchange, "Invalid request data", validator);
+                        return;
+                    }
+                    
+                    LocalDateTime createdAt = LocalDateTime.now();
+                    String requestId = "REQ-" + requestNumericIdCounter.getAndIncrement();
+                    BloodRequest newRequest = new BloodRequest(requestId, userId, bloodType.getLabel(), hospitalArea, unitsNeeded, seriousness.name(), "OPEN", createdAt);
+                    snapshotLock.readLock().lock();
+                    try {
+                        awaitDurable(journal.appendRequest(newRequest));
+                        applyRequest(newRequest);
+                    } finally {
+                        snapshotLock.readLock().unlock();
+                    }
+                    publishRequest(newRequest);
+                    matchPlanner.trigger();
+                    alertDonors(newRequest);
+                    
+                    String response = "{\"success\": true, \"message\": \"Blood request posted successfully!\", \"requestId\": \"" + requestId + "\"}";
+                    sendResponse(exchange, 200, response);
+                    
+                } catch (Exception e) {
+                    sendMessage(exchange, 500, false, "Failed to post request: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    class GetRequestsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            setCORSHeaders(exchange);
+            if ("GET".equals(exchange.getRequestMethod())) {
+                try {
+                    FormParams params = FormParams.ofQuery(exchange.getRequestURI());
+                    String bloodTypeParam = params.get("bloodType", "");
+                    BloodType bloodType = BloodType.parse(bloodTypeParam);
+                    if (bloodType == null && !bloodTypeParam.trim().isEmpty()) {
+                        sendMessage(exchange, 400, false, "Unknown blood type");
+                        return;
+                    }
+                    String seriousnessParam = params.get("seriousness", "");
+                    Seriousness seriousness = Seriousness.parse(seriousnessParam);
+                    if (seriousness == null && !seriousnessParam.trim().isEmpty()) {
+                        sendMessage(exchange, 400, false, "Unknown seriousness");
+                        return;
+                    }
+                    String area = params.has("hospitalArea") ? params.get("hospitalArea") : params.get("location");
+                    String bloodTypeLabel = bloodType == null ? null : bloodType.getLabel();
+                    String normalizedArea = FilterIndex.normalize(area);
+                    String seriousnessLevel = seriousness == null ? null : seriousness.name();
+                    Long cursor = parseCursor(params);
+                    int limit = parseLimit(params);
+                    
+                    String cacheKey = "get-requests|" + bloodTypeLabel + "|" + normalizedArea + "|" + seriousnessLevel + "|" + cursor + "|" + limit;
+                    sendCachedPage(exchange, cacheKey,
+                        () -> openRequests.page(cursor, limit, bloodTypeLabel, normalizedArea, seriousnessLevel),
+                        (json, request) -> writeRequest(json, request));
+                } catch (Exception e) {
+                    sendResponse(exchange, 500, "{\"error\": \"Failed to get requests\"}");
+                }
+            }
+        }
+    }
+    
+    class RecordDonationHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            setCORSHeaders(exchange);
+            if ("OPTIONS".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            
+            if ("POST".equals(exchange.getRequestMethod())) {
+                try {
+                    FormParams params = readForm(exchange);
+                    if (params == null) return;
+                    
+                    final String donorId = params.get("donorId", "");
+                    final String requestId = params.get("requestId", "");
+                    
+                    User donor = users.findById(donorId, "DONOR");
+                    if (donor == null) {
+                        sendResponse(exchange, 400, "{\"success\": false, \"message\": \"Donor not found\"}");
+                        return;
+                    }
+                    
+                    BloodRequest request = requestsById.get(requestId);
+                    if (request == null || !request.getState().isOpen()) {
                         sendResponse(exchange, 400, "{\"success\": false, \"message\": \"Request not found or already fulfilled\"}");
                         return;
                     }
@@ -548,148 +5109,322 @@ public class BloodDonationWebApp {
                         return;
                     }
                     
-                    LocalDateTime donationDateTime = LocalDateTime.now();
-                    String donationId = "DON-" + donationNumericIdCounter++;
-                    donations.add(new Donation(donationId, donorId, requestId, donationDateTime));
-                    donor.setLastDonatedDateTime(donationDateTime);
+                    // Eligibility and remaining units are checked and updated under the donor's and the
+                    // request's locks, so concurrent calls can neither over-fulfil a request nor let a donor
+                    // give twice. The snapshot read lock is always taken first to keep the lock order fixed.
+                    // The locks are held until the donation is durable and applied, which serializes
+                    // donations to one request (or by one donor) behind each other's journal flush.
+                    String rejection = null;
+                    snapshotLock.readLock().lock();
+                    donationLocks.lock(donorId, requestId);
+                    try {
+                        if (!isEligibleForDonation(donor)) {
+                            rejection = "Donor not eligible for donation yet";
+                        } else if (!request.getState().isOpen()) {
+                            rejection = "Request not found or already fulfilled";
+                        } else {
+                            String donationId = "DON-" + donationNumericIdCounter.getAndIncrement();
+                            Donation donation = new Donation(donationId, donorId, requestId, LocalDateTime.now());
+                            awaitDurable(journal.appendDonation(donation));
+                            applyDonation(donation, donor, request);
+                        }
+                    } finally {
+                        donationLocks.unlock(donorId, requestId);
+                        snapshotLock.readLock().unlock();
+                    }
+                    
+                    if (rejection != null) {
+                        sendMessage(exchange, 400, false, rejection);
+                        return;
+                    }
+                    publishRequest(request);
+                    
+                    String response = "{\"success\": true, \"message\": \"Donation recorded successfully! Thank you for saving lives!\"}";
+                    sendResponse(exchange, 200, response);
+                    
+                } catch (Exception e) {
+                    sendMessage(exchange, 500, false, "Failed to record donation: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    class DonorDetailsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            setCORSHeaders(exchange);
+            if ("GET".equals(exchange.getRequestMethod())) {
+                try {
+                    final String userId = FormParams.ofQuery(exchange.getRequestURI()).get("userId", "");
+                    User user = users.findById(userId, "DONOR");
+                    if (user == null) {
+                        sendResponse(exchange, 404, "{\"success\": false, \"message\": \"Donor not found\"}");
+                        return;
+                    }
+                    
+                    boolean eligible = isEligibleForDonation(userId);
+                    LocalDateTime lastDonatedAt = user.getLastDonatedDateTime();
+                    String lastDonated = lastDonatedAt != null ? 
+                        lastDonatedAt.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")) : "Never";
+                    
+                    sendJson(exchange, 200, json -> json.beginObject()
+                        .field("success", true)
+                        .field("name", user.getName())
+                        .field("email", user.getEmail())
+                        .field("bloodType", user.getBloodType())
+                        .field("location", user.getLocation())
+                        .field("mobile", user.getMobile())
+                        .field("verified", verifiedUsers.contains(user.getId()))
+                        .field("gender", user.getGender())
+                        .field("lastDonated", lastDonated)
+                        .field("eligible", eligible)
+                        .field("donations", donationHistory.countForDonor(user.getId()))
+                        .endObject());
+                    
+                } catch (Exception e) {
+                    sendResponse(exchange, 500, "{\"success\": false, \"message\": \"Failed to get donor details\"}");
+                }
+            }
+        }
+    }
+    
+    class MyRequestsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            setCORSHeaders(exchange);
+            if ("GET".equals(exchange.getRequestMethod())) {
+                try {
+                    FormParams params = FormParams.ofQuery(exchange.getRequestURI());
+                    String userId = params.get("userId", "");
+                    Long cursor = parseCursor(params);
+                    
+                    // Oldest first across the hot requests and the archived ones
+                    NavigableMap<Long, BloodRequest> hot = requestsByReceiver.get(userId);
+                    if (hot == null) hot = Collections.emptyNavigableMap();
+                    NavigableMap<Long, Long> archived = archive.requestsFor(userId);
+                    if (cursor != null) {
+                        hot = hot.tailMap(cursor, false);
+                        archived = archived.tailMap(cursor, false);
+                    }
+                    sendPage(exchange, Archive.mergePage(hot, archived, archive::readRequest, false, parseLimit(params)),
+                        (json, request) -> writeRequest(json, request));
+                } catch (Exception e) {
+                    sendResponse(exchange, 500, "{\"error\": \"Failed to get requests\"}");
+                }
+            }
+        }
+    }
+    
+    class GetDonorsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            setCORSHeaders(exchange);
+            if ("GET".equals(exchange.getRequestMethod())) {
+                try {
+                    FormParams params = FormParams.ofQuery(exchange.getRequestURI());
+                    String bloodTypeParam = params.get("bloodType", "");
+                    BloodType bloodType = BloodType.parse(bloodTypeParam);
+                    if (bloodType == null && !bloodTypeParam.trim().isEmpty()) {
+                        // An unencoded '+' arrives as a space, so "A+" must be sent as "A%2B"
+                        sendMessage(exchange, 400, false, "Unknown blood type");
+                        return;
+                    }
+                    String location = params.get("location");
+                    Long cursor = parseCursor(params);
+                    int limit = parseLimit(params);
+                    
+                    // Promote expired cooldowns first; that bumps the generation if the answer changes
+                    eligibility.promoteDue();
+                    String cacheKey = "get-donors|" + bloodType + "|" + FilterIndex.normalize(location) + "|" + cursor + "|" + limit;
+                    sendCachedPage(exchange, cacheKey,
+                        () -> eligibility.eligibleDonors(bloodType, location, cursor, limit),
+                        (json, user) -> writeDonor(json, user));
+                } catch (Exception e) {
+                    sendResponse(exchange, 500, "{\"error\": \"Failed to get donors\"}");
+                }
+            }
+        }
+    }
+    
+    class MatchHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            setCORSHeaders(exchange);
+            if ("GET".equals(exchange.getRequestMethod())) {
+                try {
+                    FormParams params = FormParams.ofQuery(exchange.getRequestURI());
+                    BloodRequest request = findRequest(params.get("requestId", ""));
+                    if (request == null) {
+                        sendResponse(exchange, 404, "{\"success\": false, \"message\": \"Request not found\"}");
+                        return;
+                    }
+                    
+                    sendPage(exchange, findMatchingDonors(request, parseCursor(params), parseLimit(params)),
+                        (json, user) -> writeDonor(json, user));
+                } catch (Exception e) {
+                    sendResponse(exchange, 500, "{\"error\": \"Failed to match donors\"}");
+                }
+            }
+        }
+    }
+    
+    // Issues a fresh code to a registered user's mobile: ?userId=
+    class SendOtpHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            setCORSHeaders(exchange);
+            if ("OPTIONS".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            
+            if ("POST".equals(exchange.getRequestMethod())) {
+                try {
+                    FormParams params = readForm(exchange);
+                    if (params == null) return;
                     
-                    request.setUnitsNeeded(request.getUnitsNeeded() - 1);
-                    if (request.getUnitsNeeded() <= 0) {
-                        request.setStatus("FULFILLED");
+                    User user = users.findById(params.get("userId", ""));
+                    if (user == null) {
+                        sendResponse(exchange, 404, "{\"success\": false, \"message\": \"User not found\"}");
+                        return;
+                    }
+                    if (!sendOtp(user)) {
+                        sendMessage(exchange, 429, false, "Too many codes requested, please try again later");
+                        return;
                     }
-                    
-                    String response = "{\"success\": true, \"message\": \"Donation recorded successfully! Thank you for saving lives!\"}";
-                    sendResponse(exchange, 200, response);
-                    
+                    sendMessage(exchange, 200, true, "Verification code sent to your mobile");
                 } catch (Exception e) {
-                    sendResponse(exchange, 500, "{\"success\": false, \"message\": \"Failed to record donation: " + e.getMessage() + "\"}");
+                    sendMessage(exchange, 500, false, "Failed to send code: " + e.getMessage());
                 }
             }
         }
     }
     
-    class DonorDetailsHandler implements HttpHandler {
+    // Checks a code issued at registration or by send-otp: userId, code
+    class VerifyOtpHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             setCORSHeaders(exchange);
-            if ("GET".equals(exchange.getRequestMethod())) {
+            if ("OPTIONS".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            
+            if ("POST".equals(exchange.getRequestMethod())) {
                 try {
-                    String query = exchange.getRequestURI().getQuery();
-                    String userIdParam = "";
-                    if (query != null) {
-                        String[] params = query.split("&");
-                        for (String param : params) {
-                            String[] kv = param.split("=", 2);
-                            if (kv.length == 2 && kv[0].equals("userId")) {
-                                userIdParam = URLDecoder.decode(kv[1], "UTF-8");
-                            }
-                        }
-                    }
+                    FormParams params = readForm(exchange);
+                    if (params == null) return;
                     
-                    final String userId = userIdParam;
-                    User user = users.stream().filter(u -> u.getId().equals(userId) && u.getRole().equals("DONOR")).findFirst().orElse(null);
-                    if (user == null) {
-                        sendResponse(exchange, 404, "{\"success\": false, \"message\": \"Donor not found\"}");
-                        return;
+                    String userId = params.get("userId", "");
+                    switch (otpIssuer.verify(userId, params.get("code", ""))) {
+                        case VERIFIED:
+                            recordVerified(userId);
+                            sendMessage(exchange, 200, true, "Mobile number verified");
+                            break;
+                        case INVALID:
+                            sendMessage(exchange, 400, false, "Incorrect code");
+                            break;
+                        case TOO_MANY_ATTEMPTS:
+                            sendMessage(exchange, 429, false, "Too many attempts, please request a new code");
+                            break;
+                        default:
+                            sendMessage(exchange, 400, false, "Code expired, please request a new one");
                     }
-                    
-                    boolean eligible = isEligibleForDonation(userId);
-                    String lastDonated = user.getLastDonatedDateTime() != null ? 
-                        user.getLastDonatedDateTime().format(DateTimeFormatter.ofPattern("yyyy-MM-dd")) : "Never";
-                    
-                    String response = "{" +
-                        "\"success\": true," +
-                        "\"name\": \"" + user.getName() + "\"," +
-                        "\"email\": \"" + user.getEmail() + "\"," +
-                        "\"bloodType\": \"" + user.getBloodType() + "\"," +
-                        "\"location\": \"" + user.getLocation() + "\"," +
-                        "\"mobile\": " + user.getMobile() + "," +
-                        "\"gender\": \"" + user.getGender() + "\"," +
-                        "\"lastDonated\": \"" + lastDonated + "\"," +
-                        "\"eligible\": " + eligible +
-                        "}";
-                    
-                    sendResponse(exchange, 200, response);
-                    
                 } catch (Exception e) {
-                    sendResponse(exchange, 500, "{\"success\": false, \"message\": \"Failed to get donor details\"}");
+                    sendMessage(exchange, 500, false, "Failed to verify code: " + e.getMessage());
                 }
             }
         }
     }
     
-    class MyRequestsHandler implements HttpHandler {
+    // The request the last auto-matching run proposed to this donor, if it still needs them: ?donorId=
+    class ProposalsHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             setCORSHeaders(exchange);
             if ("GET".equals(exchange.getRequestMethod())) {
                 try {
-                    String query = exchange.getRequestURI().getQuery();
-                    String userIdParam = "";
-                    if (query != null) {
-                        String[] params = query.split("&");
-                        for (String param : params) {
-                            String[] kv = param.split("=", 2);
-                            if (kv.length == 2 && kv[0].equals("userId")) {
-                                userIdParam = URLDecoder.decode(kv[1], "UTF-8");
-                            }
-                        }
+                    final String donorId = FormParams.ofQuery(exchange.getRequestURI()).get("donorId", "");
+                    User donor = users.findById(donorId, "DONOR");
+                    if (donor == null) {
+                        sendResponse(exchange, 404, "{\"success\": false, \"message\": \"Donor not found\"}");
+                        return;
                     }
                     
-                    final String userId = userIdParam;
-                    StringBuilder json = new StringBuilder("[");
-                    boolean first = true;
-                    
-                    for (BloodRequest request : requests) {
-                        if (request.getUserId().equals(userId)) {
-                            if (!first) json.append(",");
-                            json.append("{")
-                                .append("\"id\":\"").append(request.getId()).append("\",")
-                                .append("\"bloodType\":\"").append(request.getBloodType()).append("\",")
-                                .append("\"hospitalArea\":\"").append(request.getHospitalArea()).append("\",")
-                                .append("\"unitsNeeded\":").append(request.getUnitsNeeded()).append(",")
-                                .append("\"seriousness\":\"").append(request.getSeriousness()).append("\",")
-                                .append("\"status\":\"").append(request.getStatus()).append("\"")
-                                .append("}");
-                            first = false;
+                    // Proposals are refreshed periodically, so drop any that a donation has overtaken since
+                    MatchPlanner.Proposal proposal = matchPlanner.proposalFor(donorId);
+                    BloodRequest.State state = proposal == null ? null : proposal.request.getState();
+                    boolean current = state != null && state.isOpen() && isEligibleForDonation(donor);
+                    sendJson(exchange, 200, json -> {
+                        json.beginArray();
+                        if (current) {
+                            BloodRequest request = proposal.request;
+                            json.beginObject()
+                                .field("requestId", request.getId())
+                                .field("bloodType", request.getBloodType())
+                                .field("hospitalArea", request.getHospitalArea())
+                                .field("unitsNeeded", state.unitsNeeded)
+                                .field("seriousness", request.getSeriousness())
+                                .field("proposedAt", proposal.proposedAt.toString())
+                                .endObject();
                         }
-                    }
-                    json.append("]");
-                    
-                    sendResponse(exchange, 200, json.toString());
+                        json.endArray();
+                    });
                 } catch (Exception e) {
-                    sendResponse(exchange, 500, "{\"error\": \"Failed to get requests\"}");
+                    sendResponse(exchange, 500, "{\"error\": \"Failed to get proposals\"}");
                 }
             }
         }
     }
     
-    class GetDonorsHandler implements HttpHandler {
+    class NearbyDonorsHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             setCORSHeaders(exchange);
             if ("GET".equals(exchange.getRequestMethod())) {
                 try {
-                    StringBuilder json = new StringBuilder("[");
-                    boolean first = true;
-                    
-                    for (User user : users) {
-                        if (user.getRole().equals("DONOR") && isEligibleForDonation(user.getId())) {
-                            if (!first) json.append(",");
-                            json.append("{")
-                                .append("\"id\":\"").append(user.getId()).append("\",")
-                                .append("\"name\":\"").append(user.getName()).append("\",")
-                                .append("\"bloodType\":\"").append(user.getBloodType()).append("\",")
-                                .append("\"location\":\"").append(user.getLocation()).append("\"")
-                                .append("}");
-                            first = false;
-                        }
+                    FormParams params = FormParams.ofQuery(exchange.getRequestURI());
+                    BloodRequest request = params.has("requestId") ? findRequest(params.get("requestId")) : null;
+                    if (request == null) {
+                        sendResponse(exchange, 404, "{\"success\": false, \"message\": \"Request not found\"}");
+                        return;
+                    }
+                    
+                    Gazetteer.Coordinates origin = gazetteer.resolve(request.getHospitalArea());
+                    BloodType recipient = BloodType.parse(request.getBloodType());
+                    if (origin == null || recipient == null) {
+                        sendResponse(exchange, 400, "{\"success\": false, \"message\": \"Hospital area could not be located\"}");
+                        return;
                     }
-                    json.append("]");
                     
-                    sendResponse(exchange, 200, json.toString());
+                    double radiusKm;
+                    try {
+                        radiusKm = Double.parseDouble(params.get("radiusKm", "25"));
+                    } catch (NumberFormatException e) {
+                        radiusKm = -1;
+                    }
+                    if (!(radiusKm > 0 && radiusKm <= 2000)) {
+                        sendResponse(exchange, 400, "{\"success\": false, \"message\": \"radiusKm must be between 0 and 2000\"}");
+                        return;
+                    }
+                    
+                    eligibility.promoteDue();
+                    List<DonorGeoIndex.Nearby> nearby = donorLocations.nearest(origin, BloodType.donorsFor(recipient), radiusKm, parseLimit(params));
+                    sendJson(exchange, 200, json -> {
+                        json.beginArray();
+                        for (DonorGeoIndex.Nearby match : nearby) {
+                            json.beginObject()
+                                .field("id", match.donor.getId())
+                                .field("name", match.donor.getName())
+                                .field("bloodType", match.donor.getBloodType())
+                                .field("location", match.donor.getLocation())
+                                .name("distanceKm").value(Math.round(match.distanceKm * 10) / 10.0)
+                                .endObject();
+                        }
+                        json.endArray();
+                    });
                 } catch (Exception e) {
-                    sendResponse(exchange, 500, "{\"error\": \"Failed to get donors\"}");
+                    sendResponse(exchange, 500, "{\"error\": \"Failed to find nearby donors\"}");
                 }
             }
         }
@@ -701,6 +5436,217 @@ public class BloodDonationWebApp {
         exchange.getResponseHeaders().set("Access-Control-Allow-Headers", "Content-Type");
     }
     
+    interface JsonBody {
+        void write(JsonWriter json) throws IOException;
+    }
+    
+    // Streams the body with chunked transfer encoding instead of buffering it into a String first
+    private void sendJson(HttpExchange exchange, int statusCode, JsonBody body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(statusCode, 0);
+        try (JsonWriter json = new JsonWriter(exchange.getResponseBody())) {
+            body.write(json);
+        }
+    }
+    
+    private void sendMessage(HttpExchange exchange, int statusCode, boolean success, String message) throws IOException {
+        sendJson(exchange, statusCode, json -> json.beginObject()
+            .field("success", success)
+            .field("message", message)
+            .endObject());
+    }
+    
+    interface PageSource<T> {
+        FilterIndex.Page<T> load();
+    }
+    
+    // Like sendPage, but serves the pre-serialized body while the data generation is unchanged,
+    // gzipped when the client accepts it, and answers 304 to a matching If-None-Match
+    private <T> void sendCachedPage(HttpExchange exchange, String cacheKey, PageSource<T> source,
+                                    ItemWriter<T> itemWriter) throws IOException {
+        ResponseCache.Entry entry = responseCache.get(cacheKey);
+        if (entry == null) {
+            long generation = responseCache.generation();
+            FilterIndex.Page<T> page = source.load();
+            ByteArrayOutputStream body = new ByteArrayOutputStream(4096);
+            try (JsonWriter json = new JsonWriter(body)) {
+                json.beginArray();
+                for (T item : page.items) {
+                    itemWriter.write(json, item);
+                }
+                json.endArray();
+            }
+            entry = responseCache.put(cacheKey, generation, body.toByteArray(),
+                page.nextCursor == null ? null : Long.toString(page.nextCursor));
+        }
+        
+        byte[] gzipBody = acceptsGzip(exchange.getRequestHeaders().getFirst("Accept-Encoding")) ? entry.gzipBody() : null;
+        String etag = gzipBody != null ? entry.gzipEtag : entry.etag;
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", "application/json; charset=utf-8");
+        headers.set("ETag", etag);
+        headers.set("Cache-Control", "no-cache");
+        headers.set("Vary", "Accept-Encoding");
+        if (entry.nextCursor != null) {
+            headers.set("X-Next-Cursor", entry.nextCursor);
+            headers.set("Access-Control-Expose-Headers", "X-Next-Cursor, ETag");
+        } else {
+            headers.set("Access-Control-Expose-Headers", "ETag");
+        }
+        
+        if (etagMatches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        byte[] body = gzipBody != null ? gzipBody : entry.body;
+        if (gzipBody != null) headers.set("Content-Encoding", "gzip");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+    
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+    
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals(etag) || tag.equals("*")) return true;
+        }
+        return false;
+    }
+    
+    interface ItemWriter<T> {
+        void write(JsonWriter json, T item) throws IOException;
+    }
+    
+    // Pages are plain JSON arrays; the cursor for the next page travels in the X-Next-Cursor header
+    private <T> void sendPage(HttpExchange exchange, FilterIndex.Page<T> page, ItemWriter<T> itemWriter) throws IOException {
+        if (page.nextCursor != null) {
+            exchange.getResponseHeaders().set("X-Next-Cursor", Long.toString(page.nextCursor));
+            exchange.getResponseHeaders().set("Access-Control-Expose-Headers", "X-Next-Cursor");
+        }
+        sendJson(exchange, 200, json -> {
+            json.beginArray();
+            for (T item : page.items) {
+                itemWriter.write(json, item);
+            }
+            json.endArray();
+        });
+    }
+    
+    // Parses a form body, answering 413 itself and returning null when it is over the limit
+    private FormParams readForm(HttpExchange exchange) throws IOException {
+        try {
+            return FormParams.ofBody(exchange.getRequestBody(), maxBodyBytes);
+        } catch (FormParams.TooLargeException e) {
+            sendMessage(exchange, 413, false, e.getMessage());
+            return null;
+        }
+    }
+    
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    
+    private int parseLimit(FormParams params) {
+        return Math.max(1, Math.min(params.getInt("limit", DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE));
+    }
+    
+    private Long parseCursor(FormParams params) {
+        long cursor = params.getLong("cursor", -1);
+        return cursor < 0 ? null : cursor;
+    }
+    
+    private LocalDate parseSince(FormParams params) {
+        return params.has("since") ? LocalDate.parse(params.get("since").trim()) : null;
+    }
+    
+    // Registration rules shared by register-donor and the bulk import
+    private static Validator validateDonor(String name, String email, long mobile, BloodType bloodType, String location, Gender gender) {
+        return new Validator()
+            .name(name)
+            .email(email)
+            .mobile(mobile)
+            .present("bloodType", bloodType, "Choose one of A+, A-, B+, B-, AB+, AB-, O+, O-")
+            .notBlank("location", location)
+            .present("gender", gender, "Choose MALE, FEMALE or OTHER");
+    }
+
+    // A yyyy-MM-dd date; blank, "NEVER" or anything unparseable means never donated
+    private static LocalDateTime parseLastDonated(String value) {
+        if (value == null || value.isEmpty() || value.equals("NEVER")) return null;
+        try {
+            return LocalDate.parse(value.trim()).atStartOfDay();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private void sendValidationErrors(HttpExchange exchange, String message, Validator validator) throws IOException {
+        sendJson(exchange, 400, json -> {
+            json.beginObject()
+                .field("success", false)
+                .field("message", message)
+                .name("errors").beginObject();
+            for (Map.Entry<String, String> error : validator.errors().entrySet()) {
+                json.field(error.getKey(), error.getValue());
+            }
+            json.endObject().endObject();
+        });
+    }
+    
+    private void publishRequest(BloodRequest request) throws IOException {
+        BloodType recipient = BloodType.parse(request.getBloodType());
+        if (recipient == null) return;
+        ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+        try (JsonWriter json = new JsonWriter(body)) {
+            writeRequest(json, request);
+        }
+        requestStream.publish(recipient, RequestStream.event("request", request.getId(), body.toByteArray()));
+    }
+    
+    private void writeRequest(JsonWriter json, BloodRequest request) throws IOException {
+        BloodRequest.State state = request.getState();
+        json.beginObject()
+            .field("id", request.getId())
+            .field("bloodType", request.getBloodType())
+            .field("hospitalArea", request.getHospitalArea())
+            .field("unitsNeeded", state.unitsNeeded)
+            .field("seriousness", request.getSeriousness())
+            .field("status", state.status)
+            .endObject();
+    }
+    
+    static void writeDonation(JsonWriter json, Donation donation) throws IOException {
+        json.beginObject()
+            .field("id", donation.getId())
+            .field("donorId", donation.getDonorId())
+            .field("requestId", donation.getRequestId())
+            .field("donatedAt", donation.getDonationDateTime().toString())
+            .endObject();
+    }
+    
+    static void writeDonor(JsonWriter json, User user) throws IOException {
+        json.beginObject()
+            .field("id", user.getId())
+            .field("name", user.getName())
+            .field("bloodType", user.getBloodType())
+            .field("location", user.getLocation())
+            .endObject();
+    }
+    
     private void sendResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
         exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
         byte[] responseBytes = response.getBytes("UTF-8");
@@ -721,3 +5667,506 @@ public class BloodDonationWebApp {
         }
     }
 }
+
+// --- BloodDonationBenchmark Class ---
+// Dependency-free timing harness for hot paths in BloodDonationWebApp.
+// It lives in this file because it drives package-private classes directly. Run it with:
+//   javac -encoding UTF-8 -Xlint:all -Werror BloodDonationWebApp.java
+//   java -Xmx2g BloodDonationBenchmark [iterations] [user counts, e.g. 10000,100000,1000000]
+// Each case is warmed up first, then timed over several rounds; the best round is reported.
+// Lookup and serialization cases run against synthetic donor populations of each size, and the
+// largest population is also loaded into both UserStore layouts to compare heap per donor.
+// One JVM, no forks and no Blackhole: the numbers are rough before/after signals on one machine,
+// not microbenchmark results. The README shows how to run the same cases under JMH.
+class BloodDonationBenchmark {
+    private static final int ROUNDS = 5;
+
+    // Prevents the JIT from discarding benchmark results
+    private static volatile long sink;
+
+    interface Case {
+        long run(int index);
+    }
+
+    private static final String[] NAMES = {"Ann Lee", "Bob", "Ravi Kumar", "X1"};
+    private static final String[] EMAILS = {"ann@gmail.com", "bob42@gmail.com", "Ravi@gmail.com", "x@yahoo.com"};
+    private static final long[] MOBILES = {9876543210L, 6000000000L, 5999999999L, 987654321L};
+    private static final String[] BLOOD_TYPES = {"A+", "o-", "AB+", "C+"};
+    private static final String[] GENDERS = {"MALE", "female", "OTHER", "unknown"};
+    private static final String[] SERIOUSNESS = {"HIGH", "moderate", "LOW", "URGENT"};
+
+    private static final String[] LOCATIONS = {"Hyderabad", "Chennai", "Mumbai", "Delhi", "Pune", "Kolkata", "Bengaluru", "Jaipur"};
+    private static final int PAGE_SIZE = 100;
+    private static final int PROBES = 4096;
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        String sizes = args.length > 1 ? args[1] : "10000,100000,1000000";
+
+        System.out.println("⏱️ Rough nanoTime timings for before/after comparison on this machine, not JMH results");
+        System.out.println("🧪 Registration validation, " + iterations + " iterations x " + ROUNDS + " rounds");
+        report("legacy (String.matches, array scans)", iterations, BloodDonationBenchmark::legacyRegistration);
+        report("Validator (compiled patterns, enums)", iterations, BloodDonationBenchmark::validatorRegistration);
+
+        int largest = 0;
+        for (String size : sizes.split(",")) {
+            int userCount = Integer.parseInt(size.trim());
+            benchmarkPopulation(userCount, iterations);
+            largest = Math.max(largest, userCount);
+        }
+
+        System.out.println(String.format(Locale.ROOT, "🧪 Heap per donor, %,d donors", largest));
+        reportFootprint("UserRepository (object per user)", largest, new UserRepository());
+        reportFootprint("CompactUserStore (columnar)", largest, new CompactUserStore());
+    }
+
+    // Retained heap of a store holding userCount donors, measured as the used-heap delta around filling it
+    private static void reportFootprint(String label, int userCount, UserStore store) {
+        long before = usedHeapAfterGc();
+        LocalDateTime now = LocalDateTime.now();
+        for (int n = 1; n <= userCount; n++) {
+            store.add(syntheticDonor(n, now));
+        }
+        long after = usedHeapAfterGc();
+        sink += store.size();
+        System.out.println(String.format(Locale.ROOT, "  %-40s %8.1f bytes/donor", label, (double) (after - before) / userCount));
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    // --- Matching, lookup and serialization over a synthetic population ---
+
+    private static void benchmarkPopulation(int userCount, int iterations) {
+        long start = System.nanoTime();
+        UserRepository users = new UserRepository();
+        EligibilityTracker eligibility = new EligibilityTracker();
+        User[] donors = populate(userCount, users, eligibility);
+        System.out.println(String.format(Locale.ROOT, "🧪 %,d synthetic donors (built in %d ms)",
+            userCount, (System.nanoTime() - start) / 1_000_000));
+
+        BloodType[] recipients = BloodType.values();
+        report("canDonateTo", iterations, i -> {
+            User donor = donors[i % donors.length];
+            return BloodDonationWebApp.canDonateTo(donor.getBloodType(), recipients[i & 7].getLabel()) ? 1 : 0;
+        });
+
+        report("isEligibleForDonation", iterations,
+            i -> BloodDonationWebApp.isEligibleForDonation(donors[i % donors.length]) ? 1 : 0);
+
+        // Half the probes hit registered addresses, half miss
+        Random random = new Random(42);
+        String[] emails = new String[PROBES];
+        for (int p = 0; p < PROBES; p++) {
+            int n = random.nextInt(userCount) + 1;
+            emails[p] = (p & 1) == 0 ? "donor" + n + "@gmail.com" : "unknown" + n + "@gmail.com";
+        }
+        report("isEmailTaken", iterations, i -> users.isEmailTaken(emails[i & (PROBES - 1)]) ? 1 : 0);
+
+        // The body GetDonorsHandler streams for one page, unfiltered and filtered by blood type and location
+        int pages = Math.max(1, iterations / 100);
+        report("get-donors page of " + PAGE_SIZE + " (JSON)", pages,
+            i -> writePage(eligibility.eligibleDonors(null, null, null, PAGE_SIZE)));
+        report("get-donors page, O- in Chennai (JSON)", pages,
+            i -> writePage(eligibility.eligibleDonors(BloodType.O_NEG, "chennai", null, PAGE_SIZE)));
+
+        // One open request per ten donors; every run is a full batch assignment
+        List<BloodRequest> openRequests = syntheticRequests(userCount / 10);
+        MatchPlanner planner = new MatchPlanner(() -> openRequests, eligibility::eligibleDonors);
+        reportMillis(String.format(Locale.ROOT, "auto-matching run, %,d requests", openRequests.size()),
+            i -> planner.plan().size());
+    }
+
+    private static List<BloodRequest> syntheticRequests(int count) {
+        BloodType[] bloodTypes = BloodType.values();
+        Seriousness[] levels = Seriousness.values();
+        LocalDateTime now = LocalDateTime.now();
+        List<BloodRequest> requests = new ArrayList<>(count);
+        for (int n = 1; n <= count; n++) {
+            requests.add(new BloodRequest("REQ-" + n, "REC-" + n, bloodTypes[(n * 7) & 7].getLabel(),
+                LOCATIONS[(n >>> 2) & 7], 1 + n % 3, levels[n % 3].name(), "OPEN", now));
+        }
+        return requests;
+    }
+
+    // A third of the donors never donated, a third donated last month and a third over a year ago
+    private static User[] populate(int userCount, UserRepository users, EligibilityTracker eligibility) {
+        LocalDateTime now = LocalDateTime.now();
+        User[] donors = new User[userCount];
+        for (int n = 1; n <= userCount; n++) {
+            User donor = syntheticDonor(n, now);
+            users.add(donor);
+            eligibility.track(donor);
+            donors[n - 1] = donor;
+        }
+        return donors;
+    }
+
+    // Locations are parsed per request in the app, so each donor gets its own String instance here too
+    private static User syntheticDonor(int n, LocalDateTime now) {
+        BloodType[] bloodTypes = BloodType.values();
+        User donor = new User(String.valueOf(n), "Donor " + n, "donor" + n + "@gmail.com",
+            bloodTypes[n & 7].getLabel(), new String(LOCATIONS[(n >>> 3) & 7]), 6_000_000_000L + n, "DONOR",
+            (n & 1) == 0 ? "MALE" : "FEMALE");
+        switch (n % 3) {
+            case 1: donor.setLastDonatedDateTime(now.minusDays(30)); break;
+            case 2: donor.setLastDonatedDateTime(now.minusDays(400)); break;
+            default: break;
+        }
+        return donor;
+    }
+
+    private static long writePage(FilterIndex.Page<User> page) {
+        CountingOutputStream out = new CountingOutputStream();
+        try (JsonWriter json = new JsonWriter(out)) {
+            json.beginArray();
+            for (User user : page.items) {
+                BloodDonationWebApp.writeDonor(json, user);
+            }
+            json.endArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.count;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    // For cases where a single operation takes milliseconds or more
+    private static void reportMillis(String label, Case benchmark) {
+        measure(benchmark, 1); // warmup
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            best = Math.min(best, measure(benchmark, 1));
+        }
+        System.out.println(String.format(Locale.ROOT, "  %-40s %8.1f ms/op", label, best / 1e6));
+    }
+
+    private static void report(String label, int iterations, Case benchmark) {
+        measure(benchmark, iterations); // warmup
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            best = Math.min(best, measure(benchmark, iterations));
+        }
+        System.out.println(String.format(Locale.ROOT, "  %-40s %8.1f ns/op", label, (double) best / iterations));
+    }
+
+    private static long measure(Case benchmark, int iterations) {
+        long result = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            result += benchmark.run(i);
+        }
+        long elapsed = System.nanoTime() - start;
+        sink += result;
+        return elapsed;
+    }
+
+    // --- Registration validation ---
+
+    private static long validatorRegistration(int i) {
+        int n = i & 3;
+        Validator validator = new Validator()
+            .name(NAMES[n])
+            .email(EMAILS[n])
+            .mobile(MOBILES[n])
+            .present("bloodType", BloodType.parse(BLOOD_TYPES[n]), "invalid")
+            .present("gender", Gender.parse(GENDERS[n]), "invalid")
+            .present("seriousness", Seriousness.parse(SERIOUSNESS[n]), "invalid");
+        return validator.errors().size();
+    }
+
+    private static long legacyRegistration(int i) {
+        int n = i & 3;
+        int errors = 0;
+        if (!legacyIsValidName(NAMES[n])) errors++;
+        if (!legacyIsValidEmail(EMAILS[n])) errors++;
+        if (!legacyIsValidMobile(MOBILES[n])) errors++;
+        if (!legacyIsValidBloodType(BLOOD_TYPES[n])) errors++;
+        if (!legacyIsValidGender(GENDERS[n])) errors++;
+        if (!legacyIsValidSeriousness(SERIOUSNESS[n])) errors++;
+        return errors;
+    }
+
+    // The validation methods BloodDonationWebApp used before Validator, kept as the baseline
+
+    private static boolean legacyIsValidEmail(String email) {
+        String regex = "^[a-z][a-z0-9]*@gmail\\.com$";
+        return email != null && email.matches(regex);
+    }
+
+    private static boolean legacyIsValidBloodType(String bloodType) {
+        String[] validTypes = {"A+", "A-", "B+", "B-", "AB+", "AB-", "O+", "O-"};
+        if (bloodType == null) return false;
+        for (String type : validTypes) {
+            if (type.equalsIgnoreCase(bloodType)) return true;
+        }
+        return false;
+    }
+
+    private static boolean legacyIsValidMobile(long mobile) {
+        String mobileStr = String.valueOf(mobile);
+        return mobileStr.length() == 10 && (mobileStr.charAt(0) >= '6' && mobileStr.charAt(0) <= '9');
+    }
+
+    private static boolean legacyIsValidSeriousness(String seriousness) {
+        String[] validLevels = {"LOW", "MODERATE", "HIGH"};
+        if (seriousness == null) return false;
+        for (String level : validLevels) {
+            if (level.equalsIgnoreCase(seriousness)) return true;
+        }
+        return false;
+    }
+
+    private static boolean legacyIsValidGender(String gender) {
+        return gender != null && (gender.equalsIgnoreCase("MALE") || gender.equalsIgnoreCase("FEMALE") || gender.equalsIgnoreCase("OTHER"));
+    }
+
+    private static boolean legacyIsValidName(String name) {
+        return name != null && name.matches("^[a-zA-Z\\s]+$") && !name.trim().isEmpty();
+    }
+}
+
+// --- BloodDonationTests Class ---
+// Framework-free regression checks. Each test runs against a fresh data directory, and the process exits
+// non-zero if any check fails:  java -cp out BloodDonationTests
+class BloodDonationTests {
+    interface Test {
+        void run() throws Exception;
+    }
+
+    private static int failures;
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("saviour.notify.sink", "memory");
+        run("get-donors and get-requests reject an unencoded blood type", BloodDonationTests::rejectsUnknownFilters);
+        run("archive keeps every record when a batch starts in a new region", BloodDonationTests::archiveCrossesRegions);
+        run("outbox accepts a notification retried after FULL", BloodDonationTests::outboxRetriesAfterFull);
+        run("every donor/recipient pair follows the compatibility table", BloodDonationTests::compatibilityMatrix);
+        run("a page built during a write is never served after it", BloodDonationTests::pageBuiltDuringWrite);
+        System.out.println(failures == 0 ? "✅ All tests passed" : "❌ " + failures + " test(s) failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static void run(String name, Test test) {
+        try {
+            test.run();
+            System.out.println("✅ " + name);
+        } catch (Exception | AssertionError e) {
+            failures++;
+            System.out.println("❌ " + name + ": " + e);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+
+    private static File tempDir() throws IOException {
+        File dir = Files.createTempDirectory("saviour-test").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    // Starts a server on a free port with its own data directory and returns the /api base URL
+    private static String startServer() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        System.setProperty("saviour.port", String.valueOf(port));
+        System.setProperty("saviour.data.dir", tempDir().getAbsolutePath());
+        new BloodDonationWebApp().startWebServer();
+        return "http://localhost:" + port + "/api";
+    }
+
+    private static int status(String url, String form) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) URI.create(url).toURL().openConnection();
+        if (form != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(form.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        connection.disconnect();
+        return status;
+    }
+
+    private static String body(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) URI.create(url).toURL().openConnection();
+        try (InputStream in = connection.getInputStream()) {
+            return new String(in.readAllBytes(), java.nio.charset.StandardCharsets.UTF_8);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static void rejectsUnknownFilters() throws IOException {
+        String api = startServer();
+        check(status(api + "/register-donor", "name=Ann&email=ann@gmail.com&mobile=9876543210&bloodType=A%2B"
+            + "&location=Hyderabad&gender=FEMALE") == 200, "A+ donor registered");
+        check(status(api + "/register-donor", "name=Bob&email=bob@gmail.com&mobile=9876543211&bloodType=B%2B"
+            + "&location=Hyderabad&gender=MALE") == 200, "B+ donor registered");
+
+        check(status(api + "/get-donors?bloodType=A+", null) == 400, "unencoded A+ is rejected");
+        String encoded = body(api + "/get-donors?bloodType=A%2B");
+        check(encoded.contains("\"Ann\"") && !encoded.contains("\"Bob\""), "A%2B returns only A+ donors: " + encoded);
+        check(status(api + "/get-donors?bloodType=", null) == 200, "an empty blood type means any");
+
+        check(status(api + "/get-requests?bloodType=A+", null) == 400, "unencoded A+ is rejected for requests");
+        check(status(api + "/get-requests?bloodType=A%2B", null) == 200, "A%2B is accepted for requests");
+        check(status(api + "/get-requests?seriousness=URGENT", null) == 400, "unknown seriousness is rejected");
+        check(status(api + "/get-requests?seriousness=high", null) == 200, "seriousness is case-insensitive");
+    }
+
+    private static void archiveCrossesRegions() throws IOException {
+        File dir = tempDir();
+        int regionBytes = 1024;
+        Archive archive = new Archive(dir, regionBytes);
+        archive.open(new Archive.Listener() {
+            @Override public void onRequest(BloodRequest request) { }
+            @Override public void onDonation(Donation donation) { }
+        });
+        LocalDateTime at = LocalDateTime.of(2024, 1, 1, 9, 0);
+        int donations = 0;
+        // One-record batches: every region boundary falls on the first record of a batch
+        while (new File(dir, "archive.bin").length() < 3L * regionBytes) {
+            Donation donation = new Donation("DON-" + donations, "7", "REQ-1", at.plusMinutes(donations));
+            archive.append(Collections.emptyList(), Collections.singletonList(donation));
+            donations++;
+        }
+        // And one larger batch that crosses a boundary part-way through
+        List<Donation> batch = new ArrayList<>();
+        for (int i = 0; i < 40; i++, donations++) {
+            batch.add(new Donation("DON-" + donations, "7", "REQ-1", at.plusMinutes(donations)));
+        }
+        archive.append(Collections.singletonList(new BloodRequest("REQ-1", "REC-1", "A+", "Hyderabad", 0, "HIGH",
+            "FULFILLED", at)), batch);
+
+        List<String> reopened = new ArrayList<>();
+        Archive copy = new Archive(dir, regionBytes);
+        copy.open(new Archive.Listener() {
+            @Override public void onRequest(BloodRequest request) { reopened.add(request.getId()); }
+            @Override public void onDonation(Donation donation) { reopened.add(donation.getId()); }
+        });
+        check(reopened.size() == donations + 1, "reopened " + reopened.size() + " of " + (donations + 1) + " records");
+        check(copy.containsRequest("REQ-1"), "request survives the reopen");
+        int seq = 0;
+        for (long offset : copy.donationsForDonor("7").values()) {
+            Donation donation = copy.readDonation(offset);
+            check(donation.getId().equals("DON-" + seq), "donation " + seq + " read back as " + donation.getId());
+            seq++;
+        }
+        check(seq == donations, "all " + donations + " donations indexed, found " + seq);
+
+        // The bulk export's scan skips the request record and every region's skip marker
+        seq = 0;
+        for (Donation donation : copy.donationsBefore(copy.end())) {
+            check(donation.getId().equals("DON-" + seq), "scan read donation " + seq + " as " + donation.getId());
+            seq++;
+        }
+        check(seq == donations, "scan found " + seq + " of " + donations + " donations");
+    }
+
+    private static void outboxRetriesAfterFull() throws InterruptedException {
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Outbox outbox = new Outbox(batch -> {
+            sending.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 1, 1, 2);
+        // The dispatcher takes the first notification and blocks in send; the second fills the queue
+        check(outbox.enqueue(new Notification(Notification.Channel.SMS, "a", "k1", "one")) == Outbox.Result.QUEUED, "first queued");
+        check(sending.await(5, TimeUnit.SECONDS), "dispatcher started sending");
+        check(outbox.enqueue(new Notification(Notification.Channel.SMS, "b", "k2", "two")) == Outbox.Result.QUEUED, "second queued");
+
+        Notification third = new Notification(Notification.Channel.SMS, "a", "k3", "three");
+        check(outbox.enqueue(third) == Outbox.Result.FULL, "third rejected while full");
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (outbox.pendingCount() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        // Recipient "a" is allowed two per hour: "one" and the retried "three"
+        Outbox.Result retried = outbox.enqueue(third);
+        check(retried == Outbox.Result.QUEUED, "retry after FULL was " + retried);
+    }
+
+    // Each page build reads the generation, loads the data and caches the body, as sendCachedPage does
+    private static void pageBuiltDuringWrite() {
+        ResponseCache cache = new ResponseCache();
+        String[] data = { "old" };
+
+        // The build runs to completion after the write started but before its change landed
+        cache.update(() -> {
+            cache.put("page", cache.generation(), data[0].getBytes(java.nio.charset.StandardCharsets.UTF_8), null);
+            data[0] = "new";
+        });
+        check(cache.get("page") == null, "page built mid-write is served after the write");
+
+        // The build read the generation before the write and the data after it
+        long builtAt = cache.generation();
+        cache.update(() -> data[0] = "newer");
+        cache.put("page", builtAt, data[0].getBytes(java.nio.charset.StandardCharsets.UTF_8), null);
+        check(cache.get("page") == null, "page built across a write is served");
+
+        cache.put("page", cache.generation(), data[0].getBytes(java.nio.charset.StandardCharsets.UTF_8), null);
+        ResponseCache.Entry entry = cache.get("page");
+        check(entry != null && new String(entry.body, java.nio.charset.StandardCharsets.UTF_8).equals("newer"),
+            "a quiet rebuild is cached with the latest data");
+    }
+
+    // Written out by hand from the README table rather than derived from BloodType, so a typo in either shows up
+    private static void compatibilityMatrix() {
+        String[][] recipientsOf = {
+            { "O-", "O-", "O+", "A-", "A+", "B-", "B+", "AB-", "AB+" },
+            { "O+", "O+", "A+", "B+", "AB+" },
+            { "A-", "A-", "A+", "AB-", "AB+" },
+            { "A+", "A+", "AB+" },
+            { "B-", "B-", "B+", "AB-", "AB+" },
+            { "B+", "B+", "AB+" },
+            { "AB-", "AB-", "AB+" },
+            { "AB+", "AB+" },
+        };
+        check(recipientsOf.length == BloodType.values().length, "table covers every blood type");
+        for (String[] row : recipientsOf) {
+            BloodType donor = BloodType.parse(row[0]);
+            check(donor != null, row[0] + " parses");
+            List<String> expected = Arrays.asList(row).subList(1, row.length);
+            for (BloodType recipient : BloodType.values()) {
+                boolean compatible = expected.contains(recipient.getLabel());
+                check(donor.canDonateTo(recipient) == compatible,
+                    donor.getLabel() + " -> " + recipient.getLabel() + " should be " + compatible);
+                check(Arrays.asList(BloodType.donorsFor(recipient)).contains(donor) == compatible,
+                    "donorsFor(" + recipient.getLabel() + ") and " + donor.getLabel() + " should be " + compatible);
+            }
+        }
+    }
+}